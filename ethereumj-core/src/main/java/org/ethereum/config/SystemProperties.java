@@ -38,7 +38,18 @@ public class SystemProperties {
 	private static int      DEFAULT_TRACE_STARTBLOCK = -1;
 	private static int      DEFAULT_MAX_HASHES_ASK = -1; // unlimited
 	private static int      DEFAULT_MAX_BLOCKS_ASK = 10;
+	private static int      DEFAULT_HASH_QUEUE_MEMORY = 1000000;
 	private static int      DEFAULT_MAX_BLOCKS_QUEUED = 300;
+	private static int      DEFAULT_MAX_BLOCKS_QUEUED_MB = 64;
+	private static int      DEFAULT_BLOCK_DOWNLOAD_TIMEOUT = 10;
+	private static int      DEFAULT_PEER_REQUEST_WINDOW = 4;
+	private static int      DEFAULT_PEER_EVENT_LOOP_THREADS = 0;
+	private static int      DEFAULT_BLOCK_VERIFY_THREADS = 2;
+	private static int      DEFAULT_BLOCK_IMPORT_QUEUE = 64;
+	private static int      DEFAULT_HASH_CACHE_SIZE = 10000;
+	private static int      DEFAULT_HASH_CACHE_MAX_INPUT = 1024;
+	private static int      DEFAULT_LISTENER_QUEUE_SIZE = 1000;
+	private static int      DEFAULT_TX_POOL_SIZE = 4096;
 	private static String   DEFAULT_PROJECT_VERSION = "";
 	private static String   DEFAULT_HELLO_PHRASE = "Dev";
     private static Boolean  DEFAULT_VM_TRACE     = false;
@@ -194,11 +205,66 @@ public class SystemProperties {
 		return Integer.parseInt(prop.getProperty("max.blocks.ask"));
 	}
 
+	public int hashQueueMemory() {
+		if (prop.isEmpty()) return DEFAULT_HASH_QUEUE_MEMORY;
+		return Integer.parseInt(prop.getProperty("hash.queue.memory"));
+	}
+
 	public Integer maxBlocksQueued() {
 		if (prop.isEmpty()) return DEFAULT_MAX_BLOCKS_QUEUED;
 		return Integer.parseInt(prop.getProperty("max.blocks.queued"));
 	}
 
+	public int maxBlocksQueuedMb() {
+		if (prop.isEmpty()) return DEFAULT_MAX_BLOCKS_QUEUED_MB;
+		return Integer.parseInt(prop.getProperty("max.blocks.queued.mb"));
+	}
+
+	public int blockDownloadTimeout() {
+		if (prop.isEmpty()) return DEFAULT_BLOCK_DOWNLOAD_TIMEOUT * 1000;
+		return Integer.parseInt(prop.getProperty("block.download.timeout")) * 1000;
+	}
+
+	public int peerRequestWindow() {
+		if (prop.isEmpty()) return DEFAULT_PEER_REQUEST_WINDOW;
+		return Integer.parseInt(prop.getProperty("peer.request.window"));
+	}
+
+	public int peerEventLoopThreads() {
+		if (prop.isEmpty()) return DEFAULT_PEER_EVENT_LOOP_THREADS;
+		return Integer.parseInt(prop.getProperty("peer.event.loop.threads"));
+	}
+
+	public int blockVerifyThreads() {
+		if (prop.isEmpty()) return DEFAULT_BLOCK_VERIFY_THREADS;
+		return Integer.parseInt(prop.getProperty("block.verify.threads"));
+	}
+
+	public int blockImportQueue() {
+		if (prop.isEmpty()) return DEFAULT_BLOCK_IMPORT_QUEUE;
+		return Integer.parseInt(prop.getProperty("block.import.queue"));
+	}
+
+	public int hashCacheSize() {
+		if (prop.isEmpty()) return DEFAULT_HASH_CACHE_SIZE;
+		return Integer.parseInt(prop.getProperty("hash.cache.size"));
+	}
+
+	public int hashCacheMaxInput() {
+		if (prop.isEmpty()) return DEFAULT_HASH_CACHE_MAX_INPUT;
+		return Integer.parseInt(prop.getProperty("hash.cache.max.input"));
+	}
+
+	public int listenerQueueSize() {
+		if (prop.isEmpty()) return DEFAULT_LISTENER_QUEUE_SIZE;
+		return Integer.parseInt(prop.getProperty("listener.queue.size"));
+	}
+
+	public int txPoolSize() {
+		if (prop.isEmpty()) return DEFAULT_TX_POOL_SIZE;
+		return Integer.parseInt(prop.getProperty("tx.pool.size"));
+	}
+
 	public String projectVersion() {
 		if (prop.isEmpty()) return DEFAULT_PROJECT_VERSION;
 		return prop.getProperty("project.version");
@@ -1,17 +1,19 @@
 package org.ethereum.core;
 
 import org.ethereum.crypto.HashUtil;
-import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
+import org.ethereum.manager.WorldManager;
+import org.ethereum.trie.TrieRootBuilder;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -50,9 +52,27 @@ public class Block {
 	
 	private byte[] rlpEncoded;
     private boolean parsed = false;
+
+    /* Set for the blocks created from the header only, until the body is read */
+    private byte[] headerEncoded;
+    private BodyLoader bodyLoader;
     
-    private Trie txsState;
-    
+    /**
+     * Supplies the RLP encoded body [txReceipts, uncles] of a block
+     * that was created from its header only
+     */
+    public interface BodyLoader {
+        byte[] loadBody();
+    }
+
+    /**
+     * Supplies the headers of the ancestors a block is validated against,
+     * <code>null</code> when there is no header with that hash
+     */
+    public interface HeaderLoader {
+        BlockHeader loadHeader(byte[] hash);
+    }
+
     /* Constructors */
     
     public Block(byte[] rawData) {
@@ -60,6 +80,20 @@ public class Block {
         this.rlpEncoded = rawData;
         this.parsed = false;
     }
+
+    /**
+     * Block with the header parsed right away and the transactions
+     * and uncles read on the first access to them
+     *
+     * @param headerEncoded - RLP encoded header
+     * @param bodyLoader - source of the body, see {@link #getEncodedBody()}
+     */
+    public Block(byte[] headerEncoded, BodyLoader bodyLoader) {
+        this.headerEncoded = headerEncoded;
+        this.bodyLoader = bodyLoader;
+        this.header = new BlockHeader(RLPView.wrap(headerEncoded));
+        this.parsed = false;
+    }
     
 	public Block(byte[] parentHash, byte[] unclesHash, byte[] coinbase,
 			byte[] difficulty, long number, long minGasPrice, long gasLimit,
@@ -84,85 +118,115 @@ public class Block {
 
     private void parseRLP() {
 
-        RLPList params = RLP.decode2(rlpEncoded);
-        RLPList block = (RLPList) params.get(0);
+        if (bodyLoader != null) {
+            parseBody();
+            return;
+        }
+
+        RLPView block = RLPView.wrap(rlpEncoded);
         
         // Parse Header
-        RLPList header = (RLPList) block.get(0);
-        this.header = new BlockHeader(header);
+        this.header = new BlockHeader(block.get(0));
         
+        this.parseBody(block.get(1), block.get(2));
+    }
+
+    private void parseBody() {
+
+        byte[] body = bodyLoader.loadBody();
+        if (body == null) {
+            logger.warn("No body stored for block: [{}]", this.header.getNumber());
+            body = RLP.encodeList(RLP.encodeList(), RLP.encodeList());
+        }
+
+        RLPView rlpBody = RLPView.wrap(body);
+        this.parseBody(rlpBody.get(0), rlpBody.get(1));
+
+        byte[] bodyElements = Arrays.copyOfRange(body, RLP.getFirstListElement(body, 0), body.length);
+        this.rlpEncoded = RLP.encodeList(headerEncoded, bodyElements);
+        this.headerEncoded = null;
+        this.bodyLoader = null;
+    }
+
+    private void parseBody(RLPView txReceipts, RLPView uncleBlocks) {
+
         // Parse Transactions
-        RLPList txReceipts = (RLPList) block.get(1);
         this.parseTxs(this.header.getTxTrieRoot(), txReceipts);
 
         // Parse Uncles
-        RLPList uncleBlocks = (RLPList) block.get(2);
-        for (RLPElement rawUncle : uncleBlocks) {
+        for (int i = 0; i < uncleBlocks.size(); i++) {
 
-            RLPList uncleHeader = (RLPList) rawUncle;
-            BlockHeader blockData = new BlockHeader(uncleHeader);
+            BlockHeader blockData = new BlockHeader(uncleBlocks.get(i));
             this.uncleList.add(blockData);
         }
+
+        // the uncles are hashed as they came, nothing is encoded again
+        byte[] unclesHash = HashUtil.sha3(uncleBlocks.getEncoded());
+        if (!Arrays.equals(unclesHash, this.header.getUnclesHash()))
+            logger.error("Added uncles don't match the given unclesHash");
         this.parsed = true;
     }
 
     public byte[] getHash() {
-        if (!parsed) parseRLP();
-       	return HashUtil.sha3(this.header.getEncoded());
+        if (header == null) parseRLP();
+       	return this.header.getHash();
     }
 
     public Block getParent() {
+        if (header == null) parseRLP();
 		return this.header.getParent();
 	}
     
 	public byte[] calcDifficulty() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.calcDifficulty();
 	}
 
 	public long calcGasLimit() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.calcGasLimit();
 	}
 	
 	public boolean validateNonce() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.validateNonce();
 	}
 
     
     public byte[] getParentHash() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getParentHash();
     }
 
     public byte[] getUnclesHash() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getUnclesHash();
     }
 
     public byte[] getCoinbase() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getCoinbase();
     }
 
     public byte[] getStateRoot() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getStateRoot();
     }
     
     public void setStateRoot(byte[] stateRoot) {
+        // the body is read first, the block is encoded again with the new header
         if (!parsed) parseRLP();
         this.header.setStateRoot(stateRoot);
+        rlpEncoded = null;
     }
 
     public byte[] getTxTrieRoot() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getTxTrieRoot();
     }
 
     public byte[] getDifficulty() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getDifficulty();
     }
 
@@ -176,45 +240,51 @@ public class Block {
     }
     
     public long getTimestamp() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getTimestamp();
     }
     
     public long getNumber() {
-    	if (!parsed) parseRLP();
+    	if (header == null) parseRLP();
 		return this.header.getNumber();
 	}
 
 	public long getMinGasPrice() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.getMinGasPrice();
 	}
 
 	public long getGasLimit() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.getGasLimit();
 	}
 
 	public long getGasUsed() {
-		if (!parsed) parseRLP();
+		if (header == null) parseRLP();
 		return this.header.getGasUsed();
 	}
 
 	public byte[] getExtraData() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getExtraData();
     }
 
     public byte[] getNonce() {
-        if (!parsed) parseRLP();
+        if (header == null) parseRLP();
         return this.header.getNonce();
     }
     
     public void setNonce(byte[] nonce) {
+        if (!parsed) parseRLP();
         this.header.setNonce(nonce);
         rlpEncoded = null;
     }
 
+    public BlockHeader getHeader() {
+        if (header == null) parseRLP();
+        return header;
+    }
+
     public List<Transaction> getTransactionsList() {
         if (!parsed) parseRLP();
         return transactionsList;
@@ -293,32 +363,32 @@ public class Block {
 
     }
     
-    private void parseTxs(byte[] expectedRoot, RLPList txReceipts) {
+    private void parseTxs(byte[] expectedRoot, RLPView txReceipts) {
 
-        this.txsState = new TrieImpl(null);
+        List<byte[]> keys = new ArrayList<>(txReceipts.size());
+        List<byte[]> values = new ArrayList<>(txReceipts.size());
         for (int i = 0; i < txReceipts.size(); i++) {
-        	RLPElement rlpTxReceipt = txReceipts.get(i);
-            RLPElement txData = ((RLPList)rlpTxReceipt).get(0);
+        	RLPView rlpTxReceipt = txReceipts.get(i);
+            RLPView txData = rlpTxReceipt.get(0);
             
             // YP 4.3.1
-            RLPElement pstTxState = ((RLPList)rlpTxReceipt).get(1);
-            RLPElement cummGas    = ((RLPList)rlpTxReceipt).get(2);
+            RLPView pstTxState = rlpTxReceipt.get(1);
+            RLPView cummGas    = rlpTxReceipt.get(2);
 
-            Transaction tx = new Transaction(txData.getRLPData());
+            Transaction tx = new Transaction(txData.getEncoded());
             this.transactionsList.add(tx);
             TransactionReceipt txReceipt =
-                new TransactionReceipt(tx, pstTxState.getRLPData(), cummGas.getRLPData());
-            this.addTxReceipt(i, txReceipt);
+                new TransactionReceipt(tx, pstTxState.getBytes(), cummGas.getBytes());
+            this.txReceiptList.add(txReceipt);
+
+            // the trie has the receipts keyed by their index
+            keys.add(RLP.encodeInt(i));
+            values.add(rlpTxReceipt.getEncoded());
         }
-        String calculatedRoot = Hex.toHexString(txsState.getRootHash());
-        if(!calculatedRoot.equals(Hex.toHexString(expectedRoot)))
+        byte[] calculatedRoot = TrieRootBuilder.getRootHash(keys, values);
+        if (!Arrays.equals(calculatedRoot, expectedRoot))
 			logger.error("Added tx receipts don't match the given txsStateRoot");
-    }
-    
-    private void addTxReceipt(int counter, TransactionReceipt txReceipt) {
-        this.txReceiptList.add(txReceipt);
-        this.txsState.update(RLP.encodeInt(counter), txReceipt.getEncoded());
-        
+
         /* Figure out type of tx
          * 1. Contract creation
          * 		- perform code
@@ -340,16 +410,30 @@ public class Block {
 	 * and expected time to the next block, is reduced.
 	 */
     public boolean isValid() {
+        return isValid(new HeaderLoader() {
+            @Override
+            public BlockHeader loadHeader(byte[] hash) {
+                return WorldManager.getInstance().getBlockchain().getBlockHeaderByHash(hash);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #isValid()} with the parent and the uncle parents
+     * taken from the <code>ancestors</code> instead of the stored chain
+     */
+    public boolean isValid(HeaderLoader ancestors) {
+    	if (!parsed) parseRLP();
     	boolean isValid = false;
 
     	if(!this.isGenesis()) {
-    		isValid = this.header.isValid();
+    		isValid = this.header.isValid(ancestors.loadHeader(this.getParentHash()));
 	    	
 	    	for (BlockHeader uncle : uncleList) {
 	    		// - They are valid headers (not necessarily valid blocks)
-	    		isValid = uncle.isValid();
+	    		isValid = uncle.isValid(ancestors.loadHeader(uncle.getParentHash()));
 	    		// - Their parent is a kth generation ancestor for k in {2, 3, 4, 5, 6, 7}
-	    		long generationGap = this.getNumber() - uncle.getParent().getNumber();
+	    		long generationGap = this.getNumber() - (uncle.getNumber() - 1);
 	    		isValid = generationGap > 1 && generationGap < 8;
 	    		// - They were not uncles of the kth generation ancestor for k in {1, 2, 3, 4, 5, 6}			
 	    		generationGap = this.getNumber() - uncle.getNumber();
@@ -362,25 +446,46 @@ public class Block {
     }
     
 	public boolean isGenesis() {
+		if (header == null) parseRLP();
 		return this.header.isGenesis();
 	}
 	
 	public byte[] getEncoded() {
+		if (rlpEncoded == null && !parsed) parseRLP();
 		if(rlpEncoded == null) {
-			byte[] header = this.header.getEncoded();
-			byte[] transactions = RLP.encodeList();
-			byte[] uncles = RLP.encodeList();
-			this.rlpEncoded = RLP.encodeList(header, transactions, uncles);
+			RLPWriter writer = new RLPWriter().startList();
+			this.header.encodeTo(writer, true);
+			writer.startList();		// transactions
+			for (TransactionReceipt txReceipt : txReceiptList)
+				writer.writeEncoded(txReceipt.getEncoded());
+			writer.endList().startList();	// uncles
+			for (BlockHeader uncle : uncleList)
+				writer.writeEncoded(uncle.getEncoded());
+			this.rlpEncoded = writer.endList()
+					.endList()
+					.toByteArray();
 		}
 		return rlpEncoded;
 	}
 	
+	/**
+	 * @return RLP encoded [txReceipts, uncles] - the block without its header
+	 */
+	public byte[] getEncodedBody() {
+		byte[] encoded = getEncoded();
+		int headerPos = RLP.getFirstListElement(encoded, 0);
+		int bodyPos = RLP.getNextElementIndex(encoded, headerPos);
+		return RLP.encodeList(Arrays.copyOfRange(encoded, bodyPos, encoded.length));
+	}
+
 	public byte[] getEncodedWithoutNonce() {
-		if (!parsed) parseRLP();
-		byte[] header = this.header.getEncodedWithoutNonce();
-        byte[] transactions = RLP.encodeList();
-        byte[] uncles = RLP.encodeList();
-        
-        return RLP.encodeList(header, transactions, uncles);
+		if (header == null) parseRLP();
+		RLPWriter writer = new RLPWriter().startList();
+		this.header.encodeTo(writer, false);
+		return writer
+				.startList().endList()	// transactions
+				.startList().endList()	// uncles
+				.endList()
+				.toByteArray();
 	}
 }
@@ -7,9 +7,8 @@ import static org.ethereum.util.ByteUtil.*;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.manager.WorldManager;
 import org.ethereum.util.FastByteComparisons;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
+import org.ethereum.util.RLPView;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.Arrays;
 import org.spongycastle.util.BigIntegers;
@@ -62,33 +61,30 @@ public class BlockHeader {
     /* A 256-bit hash which proves that a sufficient amount 
      * of computation has been carried out on this block */
     private byte[] nonce;
+
+    /* SHA3 of the encoded header, computed once and reset by the setters */
+    private byte[] hash;
     
-    public BlockHeader(RLPList rlpHeader) {
-        this.parentHash     = ((RLPItem) rlpHeader.get(0)).getRLPData();
-        this.unclesHash     = ((RLPItem) rlpHeader.get(1)).getRLPData();
-        this.coinbase       = ((RLPItem) rlpHeader.get(2)).getRLPData();
-        this.stateRoot      = ((RLPItem) rlpHeader.get(3)).getRLPData();
+    public BlockHeader(RLPView rlpHeader) {
+        this.parentHash     = rlpHeader.get(0).getBytes();
+        this.unclesHash     = rlpHeader.get(1).getBytes();
+        this.coinbase       = rlpHeader.get(2).getBytes();
+        this.stateRoot      = rlpHeader.get(3).getBytes();
         
-        this.txTrieRoot     = ((RLPItem) rlpHeader.get(4)).getRLPData();
+        this.txTrieRoot     = rlpHeader.get(4).getBytes();
         if(this.txTrieRoot == null)
         	this.txTrieRoot = EMPTY_BYTE_ARRAY;
         
-        this.difficulty     = ((RLPItem) rlpHeader.get(5)).getRLPData();
+        this.difficulty     = rlpHeader.get(5).getBytes();
  
-        byte[] nrBytes      = ((RLPItem) rlpHeader.get(6)).getRLPData();
-        byte[] gpBytes      = ((RLPItem) rlpHeader.get(7)).getRLPData();
-        byte[] glBytes      = ((RLPItem) rlpHeader.get(8)).getRLPData();
-        byte[] guBytes      = ((RLPItem) rlpHeader.get(9)).getRLPData();
-        byte[] tsBytes      = ((RLPItem) rlpHeader.get(10)).getRLPData();
-        
-        this.number 		= nrBytes == null ? 0 : (new BigInteger(1, nrBytes)).longValue();
-        this.minGasPrice 	= gpBytes == null ? 0 : (new BigInteger(1, gpBytes)).longValue();
-        this.gasLimit 		= glBytes == null ? 0 : (new BigInteger(1, glBytes)).longValue();
-        this.gasUsed 		= guBytes == null ? 0 : (new BigInteger(1, guBytes)).longValue();
-        this.timestamp      = tsBytes == null ? 0 : (new BigInteger(1, tsBytes)).longValue();
+        this.number 		= rlpHeader.get(6).getLong();
+        this.minGasPrice 	= rlpHeader.get(7).getLong();
+        this.gasLimit 		= rlpHeader.get(8).getLong();
+        this.gasUsed 		= rlpHeader.get(9).getLong();
+        this.timestamp      = rlpHeader.get(10).getLong();
         
-        this.extraData       = ((RLPItem) rlpHeader.get(11)).getRLPData();
-        this.nonce           = ((RLPItem) rlpHeader.get(12)).getRLPData();
+        this.extraData       = rlpHeader.get(11).getBytes();
+        this.nonce           = rlpHeader.get(12).getBytes();
     }
     
 	public BlockHeader(byte[] parentHash, byte[] unclesHash, byte[] coinbase,
@@ -108,14 +104,24 @@ public class BlockHeader {
     }
 	
 	public boolean isValid() {
+		return isValid(this.isGenesis() ? null : this.getParentHeader());
+	}
+
+	/**
+	 * Same checks as {@link #isValid()} against the given parent header,
+	 * nothing is looked up, so a header can be checked before its parent is stored
+	 *
+	 * @param parent - header of the parent block, not used for the genesis
+	 */
+	public boolean isValid(BlockHeader parent) {
 		boolean isValid = false;
     	// verify difficulty meets requirements
-    	isValid = this.getDifficulty() == this.calcDifficulty();
+    	isValid = this.getDifficulty() == this.calcDifficulty(parent);
     	isValid = this.validateNonce();
     	// verify gasLimit meets requirements
-    	isValid = this.getGasLimit() == this.calcGasLimit();
+    	isValid = this.getGasLimit() == this.calcGasLimit(parent);
     	// verify timestamp meets requirements
-    	isValid = this.getTimestamp() > this.getParent().getTimestamp();
+    	isValid = this.getTimestamp() > parent.getTimestamp();
     	// verify extraData doesn't exceed 1024 bytes
     	isValid = this.getExtraData() == null || this.getExtraData().length <= 1024;
     	return isValid;
@@ -127,10 +133,13 @@ public class BlockHeader {
 	 * @return byte array value of the difficulty
 	 */
 	public byte[] calcDifficulty() {
+		return calcDifficulty(this.isGenesis() ? null : this.getParentHeader());
+	}
+
+	public byte[] calcDifficulty(BlockHeader parent) {
 		if (this.isGenesis())
 			return Genesis.DIFFICULTY;
 		else {
-			Block parent = this.getParent();
 			long parentDifficulty = new BigInteger(1, parent.getDifficulty()).longValue();
 			long newDifficulty = this.getTimestamp() < parent.getTimestamp() + 5 ? parentDifficulty - (parentDifficulty >> 10) : (parentDifficulty + (parentDifficulty >> 10));
 			return BigIntegers.asUnsignedByteArray(BigInteger.valueOf(newDifficulty));
@@ -143,12 +152,14 @@ public class BlockHeader {
 	 * @return long value of the gasLimit
 	 */
 	public long calcGasLimit() {
+		return calcGasLimit(this.isGenesis() ? null : this.getParentHeader());
+	}
+
+	public long calcGasLimit(BlockHeader parent) {
 		if (this.isGenesis())
 			return Genesis.GAS_LIMIT;
-		else {
-			Block parent = this.getParent();
+		else
 			return Math.max(MIN_GAS_LIMIT, (parent.getGasLimit() * (1024 - 1) + (parent.getGasUsed() * 6 / 5)) / 1024);
-		}
 	}
 	
 	/**
@@ -166,91 +177,118 @@ public class BlockHeader {
 		return FastByteComparisons.compareTo(result, 0, 32, target, 0, 32) < 0;
 	}
 
+	public byte[] getHash() {
+		if (hash == null)
+			hash = HashUtil.sha3(this.getEncoded());
+		assert Arrays.areEqual(hash, HashUtil.sha3(this.getEncoded())) : "Stale block hash";
+		return hash;
+	}
+
 	public boolean isGenesis() {
 		return this.getNumber() == Genesis.NUMBER;
 	}
 	
     public Block getParent() {
-		return WorldManager.getInstance().getBlockchain().getBlockByNumber(this.getNumber() - 1);
+		return WorldManager.getInstance().getBlockchain().getBlockByHash(this.getParentHash());
     }
 
+	/**
+	 * The header of the parent, the body of the parent is not read
+	 */
+	public BlockHeader getParentHeader() {
+		return WorldManager.getInstance().getBlockchain().getBlockHeaderByHash(this.getParentHash());
+	}
+
 	public byte[] getParentHash() {
 		return parentHash;
 	}
 	public void setParentHash(byte[] parentHash) {
 		this.parentHash = parentHash;
+		this.hash = null;
 	}
 	public byte[] getUnclesHash() {
 		return unclesHash;
 	}
 	public void setUnclesHash(byte[] unclesHash) {
 		this.unclesHash = unclesHash;
+		this.hash = null;
 	}
 	public byte[] getCoinbase() {
 		return coinbase;
 	}
 	public void setCoinbase(byte[] coinbase) {
 		this.coinbase = coinbase;
+		this.hash = null;
 	}
 	public byte[] getStateRoot() {
 		return stateRoot;
 	}
 	public void setStateRoot(byte[] stateRoot) {
 		this.stateRoot = stateRoot;
+		this.hash = null;
 	}
 	public byte[] getTxTrieRoot() {
 		return txTrieRoot;
 	}
 	public void setTxTrieRoot(byte[] txTrieRoot) {
 		this.txTrieRoot = txTrieRoot;
+		this.hash = null;
 	}
 	public byte[] getDifficulty() {
 		return difficulty;
 	}
 	public void setDifficulty(byte[] difficulty) {
 		this.difficulty = difficulty;
+		this.hash = null;
 	}
 	public long getTimestamp() {
 		return timestamp;
 	}
 	public void setTimestamp(long timestamp) {
 		this.timestamp = timestamp;
+		this.hash = null;
 	}
 	public long getNumber() {
 		return number;
 	}
 	public void setNumber(long number) {
 		this.number = number;
+		this.hash = null;
 	}
 	public long getMinGasPrice() {
 		return minGasPrice;
 	}
 	public void setMinGasPrice(long minGasPrice) {
 		this.minGasPrice = minGasPrice;
+		this.hash = null;
 	}
 	public long getGasLimit() {
 		return gasLimit;
 	}
 	public void setGasLimit(long gasLimit) {
 		this.gasLimit = gasLimit;
+		this.hash = null;
 	}
 	public long getGasUsed() {
 		return gasUsed;
 	}
 	public void setGasUsed(long gasUsed) {
 		this.gasUsed = gasUsed;
+		this.hash = null;
 	}
 	public byte[] getExtraData() {
 		return extraData;
 	}
 	public void setExtraData(byte[] extraData) {
 		this.extraData = extraData;
+		this.hash = null;
 	}
 	public byte[] getNonce() {
 		return nonce;
 	}
 	public void setNonce(byte[] nonce) {
 		this.nonce = nonce;
+		this.hash = null;
 	}
 	
 	public byte[] getEncoded() {
@@ -262,28 +300,31 @@ public class BlockHeader {
 	}
 	
 	public byte[] getEncoded(boolean withNonce) {
-        byte[] parentHash		= RLP.encodeElement(this.parentHash);
-        byte[] unclesHash		= RLP.encodeElement(this.unclesHash);
-        byte[] coinbase			= RLP.encodeElement(this.coinbase);
-        byte[] stateRoot		= RLP.encodeElement(this.stateRoot);
-        byte[] txTrieRoot		= RLP.encodeElement(this.txTrieRoot);
-        byte[] difficulty		= RLP.encodeElement(this.difficulty);
-        byte[] number			= RLP.encodeBigInteger(BigInteger.valueOf(this.number));
-        byte[] minGasPrice		= RLP.encodeBigInteger(BigInteger.valueOf(this.minGasPrice));
-        byte[] gasLimit			= RLP.encodeBigInteger(BigInteger.valueOf(this.gasLimit));
-        byte[] gasUsed			= RLP.encodeBigInteger(BigInteger.valueOf(this.gasUsed));
-        byte[] timestamp		= RLP.encodeBigInteger(BigInteger.valueOf(this.timestamp));
-        byte[] extraData		= RLP.encodeElement(this.extraData);
-        if(withNonce) {
-        	byte[] nonce			= RLP.encodeElement(this.nonce);
-        	return RLP.encodeList(parentHash, unclesHash, coinbase,
-    				stateRoot, txTrieRoot, difficulty, number,
-    				minGasPrice, gasLimit, gasUsed, timestamp, extraData, nonce);
-        } else {
-        	return RLP.encodeList(parentHash, unclesHash, coinbase,
-    				stateRoot, txTrieRoot, difficulty, number,
-    				minGasPrice, gasLimit, gasUsed, timestamp, extraData);
-        }
+        RLPWriter writer = new RLPWriter();
+        encodeTo(writer, withNonce);
+        return writer.toByteArray();
+	}
+
+	/**
+	 * Writes the encoded header as a part of a larger structure
+	 */
+	public void encodeTo(RLPWriter writer, boolean withNonce) {
+        writer.startList()
+                .writeElement(this.parentHash)
+                .writeElement(this.unclesHash)
+                .writeElement(this.coinbase)
+                .writeElement(this.stateRoot)
+                .writeElement(this.txTrieRoot)
+                .writeElement(this.difficulty)
+                .writeLong(this.number)
+                .writeLong(this.minGasPrice)
+                .writeLong(this.gasLimit)
+                .writeLong(this.gasUsed)
+                .writeLong(this.timestamp)
+                .writeElement(this.extraData);
+        if (withNonce)
+            writer.writeElement(this.nonce);
+        writer.endList();
 	}
 	
 	private StringBuffer toStringBuff = new StringBuffer();
@@ -0,0 +1,350 @@
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports the blocks in three stages connected by bounded queues:
+ * <ol>
+ * <li>verify - the header checks and the sender recovery, they don't depend on the state,
+ * so the blocks are verified on a pool, many at a time</li>
+ * <li>apply - the transactions are applied in order on a single thread</li>
+ * <li>store - the block is written to the block store and the listeners are notified
+ * on a thread of its own, while the next block is applied</li>
+ * </ol>
+ * The header of a block waiting in the pipeline is the parent the next block
+ * is verified against, so the verification doesn't wait for the store.
+ * The import stops when a block can't be stored, the blocks after it
+ * would leave a gap in the chain.
+ *
+ * The blocks are offered by a single thread, see {@link #offer(Block)} and {@link #put(Block)}.
+ */
+public class BlockImportPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    /* the metrics are logged every that many blocks stored */
+    private static final int LOG_INTERVAL = 1000;
+
+    /**
+     * The work done in the stages, see {@link BlockchainImpl}
+     */
+    public interface Stages {
+
+        /**
+         * @param ancestors - headers of the blocks in the pipeline and of the stored chain
+         * @return <code>false</code> if the block is invalid
+         */
+        boolean verify(Block block, Block.HeaderLoader ancestors);
+
+        /**
+         * @return total difficulty of the chain with the block applied,
+         * <code>null</code> if the block doesn't follow the last applied one
+         */
+        BigInteger apply(Block block);
+
+        void store(Block block, BigInteger totalDifficulty);
+
+        /**
+         * Called when the block is stored and has left the pipeline
+         */
+        void imported(Block block);
+
+        /**
+         * @return header of the stored block with that hash or <code>null</code>
+         */
+        BlockHeader loadHeader(byte[] hash);
+    }
+
+    /**
+     * Number of the blocks passed through a stage and the time spent there
+     */
+    public static class StageMetrics {
+
+        private final String name;
+        private final AtomicLong blocks = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        StageMetrics(String name) {
+            this.name = name;
+        }
+
+        void record(long startNanos) {
+            nanos.addAndGet(System.nanoTime() - startNanos);
+            blocks.incrementAndGet();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBlocks() {
+            return blocks.get();
+        }
+
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        @Override
+        public String toString() {
+            long count = blocks.get();
+            return String.format("%s: %d blocks, %d ms, %d us/block", name, count,
+                    nanos.get() / 1000000, count == 0 ? 0 : nanos.get() / count / 1000);
+        }
+    }
+
+    private static class Entry {
+        final Block block;
+        final Future<Boolean> verified;
+        BigInteger totalDifficulty;
+
+        Entry(Block block, Future<Boolean> verified) {
+            this.block = block;
+            this.verified = verified;
+        }
+    }
+
+    private final Stages stages;
+    private final int verifyThreads;
+
+    private final BlockingQueue<Entry> verifiedQueue;
+    private final Semaphore room;
+    private final BlockingQueue<Entry> storeQueue;
+
+    /* headers of the blocks offered and not stored yet */
+    private final Map<ByteArrayWrapper, BlockHeader> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final StageMetrics verifyMetrics = new StageMetrics("verify");
+    private final StageMetrics applyMetrics = new StageMetrics("apply");
+    private final StageMetrics storeMetrics = new StageMetrics("store");
+
+    private ExecutorService verifyPool;
+    private Thread applyThread;
+    private Thread storeThread;
+    private volatile boolean closed;
+
+    private final Block.HeaderLoader ancestors = new Block.HeaderLoader() {
+        @Override
+        public BlockHeader loadHeader(byte[] hash) {
+            BlockHeader header = pending.get(new ByteArrayWrapper(hash));
+            return header != null ? header : stages.loadHeader(hash);
+        }
+    };
+
+    /**
+     * @param stages - the work done in the stages
+     * @param verifyThreads - size of the verification pool
+     * @param queueCapacity - how many blocks may wait in front of the apply and the store stage
+     */
+    public BlockImportPipeline(Stages stages, int verifyThreads, int queueCapacity) {
+        this.stages = stages;
+        this.verifyThreads = verifyThreads;
+        this.verifiedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.room = new Semaphore(queueCapacity);
+        this.storeQueue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Start the verification of the block, the block is imported later
+     * after all the blocks offered before it
+     *
+     * @return <code>false</code> if the pipeline is full, the block should be offered again later
+     */
+    public boolean offer(Block block) {
+        if (closed || !room.tryAcquire())
+            return false;
+        return enqueue(block);
+    }
+
+    /**
+     * Same as {@link #offer(Block)}, waits for the room in the pipeline
+     *
+     * @return <code>false</code> if the pipeline is closed
+     */
+    public boolean put(Block block) throws InterruptedException {
+        if (closed)
+            return false;
+        room.acquire();
+        return enqueue(block);
+    }
+
+    private synchronized boolean enqueue(final Block block) {
+        if (closed) {
+            room.release();
+            return false;
+        }
+        start();
+
+        pending.put(new ByteArrayWrapper(block.getHash()), block.getHeader());
+        inFlight.incrementAndGet();
+
+        Future<Boolean> verified = verifyPool.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return stages.verify(block, ancestors);
+                } finally {
+                    verifyMetrics.record(start);
+                }
+            }
+        });
+        // the room is taken already
+        verifiedQueue.add(new Entry(block, verified));
+        return true;
+    }
+
+    /**
+     * @return number of the blocks in the pipeline
+     */
+    public int size() {
+        return inFlight.get();
+    }
+
+    public StageMetrics getVerifyMetrics() {
+        return verifyMetrics;
+    }
+
+    public StageMetrics getApplyMetrics() {
+        return applyMetrics;
+    }
+
+    public StageMetrics getStoreMetrics() {
+        return storeMetrics;
+    }
+
+    /**
+     * Stop the stages, the blocks still in the pipeline are not imported
+     */
+    public synchronized void close() {
+        closed = true;
+        if (verifyPool == null) return;
+        verifyPool.shutdownNow();
+        applyThread.interrupt();
+        storeThread.interrupt();
+    }
+
+    /* the threads are started by the first block */
+    private void start() {
+        if (verifyPool != null) return;
+
+        verifyPool = Executors.newFixedThreadPool(verifyThreads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BlockVerify-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        applyThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!closed) applyNext();
+                } catch (InterruptedException e) {
+                    // closed
+                }
+            }
+        }, "BlockApply");
+
+        storeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!closed) storeNext();
+                } catch (InterruptedException e) {
+                    // closed
+                }
+            }
+        }, "BlockStore");
+
+        applyThread.setDaemon(true);
+        storeThread.setDaemon(true);
+        applyThread.start();
+        storeThread.start();
+    }
+
+    private void applyNext() throws InterruptedException {
+        Entry entry = verifiedQueue.take();
+        room.release();
+
+        boolean valid;
+        try {
+            valid = entry.verified.get();
+        } catch (ExecutionException e) {
+            logger.error("Block verification failed: [{}]", entry.block.getNumber(), e.getCause());
+            valid = false;
+        }
+
+        if (valid) {
+            long start = System.nanoTime();
+            try {
+                entry.totalDifficulty = stages.apply(entry.block);
+            } catch (RuntimeException e) {
+                logger.error("Block apply failed: [{}]", entry.block.getNumber(), e);
+            } finally {
+                applyMetrics.record(start);
+            }
+        }
+
+        if (entry.totalDifficulty == null) {
+            done(entry.block);
+            return;
+        }
+        storeQueue.put(entry);
+    }
+
+    private void storeNext() throws InterruptedException {
+        Entry entry = storeQueue.take();
+
+        long start = System.nanoTime();
+        try {
+            stages.store(entry.block, entry.totalDifficulty);
+        } catch (RuntimeException e) {
+            logger.error("Block store failed, import stopped: [{}]", entry.block.getNumber(), e);
+            done(entry.block);
+            close();
+            return;
+        } finally {
+            storeMetrics.record(start);
+        }
+        done(entry.block);
+
+        try {
+            stages.imported(entry.block);
+        } catch (RuntimeException e) {
+            logger.error("Block listener failed: [{}]", entry.block.getNumber(), e);
+        }
+
+        if (storeMetrics.getBlocks() % LOG_INTERVAL == 0)
+            logger.info("Block import: {}; {}; {}; queued: [{}]",
+                    verifyMetrics, applyMetrics, storeMetrics, inFlight.get());
+    }
+
+    /* the block has left the pipeline, stored or rejected */
+    private void done(Block block) {
+        pending.remove(new ByteArrayWrapper(block.getHash()));
+        inFlight.decrementAndGet();
+    }
+}
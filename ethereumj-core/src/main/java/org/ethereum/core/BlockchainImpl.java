@@ -1,7 +1,6 @@
 package org.ethereum.core;
 
-import org.apache.commons.collections4.BidiMap;
-import org.apache.commons.collections4.bidimap.DualTreeBidiMap;
+import org.ethereum.db.BlockHashIndex;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Blockchain;
 import org.ethereum.facade.Repository;
@@ -59,14 +58,31 @@ public class BlockchainImpl implements Blockchain {
 	private static final long INITIAL_MIN_GAS_PRICE = 10 * SZABO.longValue();
 
 	private Repository repository;
-    private Block lastBlock;
-    private BigInteger totalDifficulty;
+    // the head of the chain, moved by the store stage of the import once the block is written
+    private volatile Block lastBlock;
+    private volatile BigInteger totalDifficulty;
+    // the block the state is at, ahead of the head while the stored blocks catch up
+    private volatile Block appliedBlock;
+    private volatile BigInteger appliedDifficulty;
     
-    // keep the index of the chain for
-    // convenient usage, <block_number, block_hash>
-    private final BidiMap<Long, ByteArrayWrapper> blockCache = new DualTreeBidiMap<>();
+    // off-heap copy of the persistent index of the chain, filled on demand
+    private final BlockHashIndex hashIndex = new BlockHashIndex();
+
+    // read-only view on the index of the chain
+    // for convenient usage, <block_number, block_hash>
+    private final Map<Long, ByteArrayWrapper> blockCache = new BlockIndexView();
 	
-    private final BlockQueue blockQueue = new BlockQueue();
+    // headers of the stored chain the blocks added directly are validated against
+    private final Block.HeaderLoader storedHeaders = new Block.HeaderLoader() {
+        @Override
+        public BlockHeader loadHeader(byte[] hash) {
+            return repository.getBlockHeader(hash);
+        }
+    };
+
+    private final BlockImportPipeline importPipeline = new BlockImportPipeline(new ImportStages(),
+            CONFIG.blockVerifyThreads(), CONFIG.blockImportQueue());
+    private final BlockQueue blockQueue = new BlockQueue(importPipeline);
     private boolean syncDoneCalled = false;
 
 	public BlockchainImpl(Repository repository) {
@@ -81,7 +97,7 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public byte[] getLatestBlockHash() {
-        if (blockCache.isEmpty())
+        if (lastBlock == null)
             return Genesis.getInstance().getHash();
         else
             return getLastBlock().getHash();
@@ -89,7 +105,7 @@ public class BlockchainImpl implements Blockchain {
     
     @Override
     public int getSize() {
-        return blockCache.size();
+        return lastBlock == null ? 0 : (int) lastBlock.getNumber() + 1;
     }
 
     @Override
@@ -99,28 +115,34 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public Block getBlockByHash(byte[] hash){
+        return repository.getBlockByHash(hash);
+    }
 
-        Long index = blockCache.inverseBidiMap().get(new ByteArrayWrapper(hash));
-        if (index == null) return null; // don't have such hash
+    @Override
+    public BlockHeader getBlockHeaderByHash(byte[] hash){
+        return repository.getBlockHeader(hash);
+    }
 
-        return repository.getBlock(index);
+    @Override
+    public TransactionReceipt getTransactionByHash(byte[] hash){
+        return repository.getTransactionReceipt(hash);
     }
 
     @Override
     public List<byte[]> getListOfHashesStartFrom(byte[] hash, int qty){
 
-        Long startIndex = blockCache.inverseBidiMap().get(new ByteArrayWrapper( hash ));
-        if (startIndex == null) return null; // strange but no such hashes in our chain
-        --startIndex;
+        BlockHeader startBlock = repository.getBlockHeader(hash);
+        if (startBlock == null) return null; // strange but no such hashes in our chain
+        long startIndex = startBlock.getNumber() - 1;
 
-        Long endIndex = startIndex - qty;
+        long endIndex = startIndex - qty;
         if (endIndex < 0) endIndex = 0L;
 
-        Vector<byte[]> result = new Vector<>();
-        for (Long i = startIndex; i >= endIndex; --i){
+        indexUpTo(startIndex);
 
-            ByteArrayWrapper baw = blockCache.get(i);
-            result.add(baw.getData());
+        Vector<byte[]> result = new Vector<>();
+        for (long i = startIndex; i >= endIndex; --i){
+            result.add(hashIndex.getHash(i));
         }
 
         return result;
@@ -133,29 +155,87 @@ public class BlockchainImpl implements Blockchain {
 		if (block == null)
 			return;
 
-        // if it is the first block to add
-        // make sure the parent is genesis
-		if (blockCache.isEmpty()
-				&& !Arrays.equals(Genesis.getInstance().getHash(),
-						block.getParentHash())) {
-			return;
-		}
-        // if there are some blocks already keep chain continuity
-        if (!blockCache.isEmpty()) {
-            String hashLast = Hex.toHexString(getLastBlock().getHash());
-            String blockParentHash = Hex.toHexString(block.getParentHash());
-            if (!hashLast.equals(blockParentHash)) return;
+        // the blocks downloaded by the queue go through the import pipeline,
+        // this one is imported right here, stage after stage
+        if (!isNextBlock(block))
+            return;
+        if (!verifyBlock(block, storedHeaders))
+            return;
+        BigInteger totalDifficulty = connectBlock(block);
+        persistBlock(block, totalDifficulty);
+        onBlockImported(block);
+    }
+
+    /**
+     * Make sure the first block follows the genesis
+     * and any other block keeps the chain continuity of the state
+     */
+    private boolean isNextBlock(Block block) {
+        Block last = appliedBlock != null ? appliedBlock : lastBlock;
+        byte[] lastHash = last == null ? Genesis.getInstance().getHash() : last.getHash();
+        return Arrays.equals(lastHash, block.getParentHash());
+    }
+
+    /**
+     * Verify stage: the checks that don't depend on the state,
+     * the senders are needed one by one later, recover them all at once
+     */
+    private boolean verifyBlock(Block block, Block.HeaderLoader ancestors) {
+        if (!block.isValid(ancestors)) {
+            logger.warn("Invalid block with nr: {}", block.getNumber());
+            return false;
         }
-        
+        if (!block.isGenesis() && !CONFIG.blockChainOnly())
+            SenderRecovery.recover(block);
+        return true;
+    }
+
+    /**
+     * Apply stage: change the state, the block becomes the head when it is stored
+     *
+     * @return total difficulty of the chain with the block,
+     * <code>null</code> if the block doesn't follow the last block
+     */
+    private BigInteger connectBlock(Block block) {
+        if (!isNextBlock(block))
+            return null;
+
         if (block.getNumber() >= CONFIG.traceStartBlock() && CONFIG.traceStartBlock() != -1) {
             AdvancedDeviceUtils.adjustDetailedTracing(block.getNumber());
         }
 
-        this.processBlock(block);
-        
+        Wallet wallet = WorldManager.getInstance().getWallet();
+        if (!block.isGenesis() && !CONFIG.blockChainOnly()) {
+            wallet.addTransactions(block.getTransactionsList());
+            this.applyBlock(block);
+            wallet.processBlock(block);
+        }
         // Remove all wallet transactions as they already approved by the net
-        WorldManager.getInstance().getWallet().removeTransactions(block.getTransactionsList());
+        wallet.removeTransactions(block.getTransactionsList());
+
+        checkStateRoot(block);
+        this.repository.getWorldState().sync();
+
+        BigInteger parentDifficulty = appliedBlock != null ? appliedDifficulty : totalDifficulty;
+        BigInteger difficulty = parentDifficulty == null ? block.getCumulativeDifficulty()
+                : parentDifficulty.add(block.getCumulativeDifficulty());
+        this.appliedDifficulty = difficulty;
+        this.appliedBlock = block;
+        return difficulty;
+    }
 
+    /**
+     * Store stage: write the block and make it the head,
+     * the state is synced by the apply stage already
+     */
+    private void persistBlock(Block block, BigInteger totalDifficulty) {
+        this.repository.saveBlockWithoutState(block, totalDifficulty);
+        indexBlock(block);
+        this.totalDifficulty = totalDifficulty;
+        this.lastBlock = block;
+    }
+
+    private void onBlockImported(Block block) {
         EthereumListener listener = WorldManager.getInstance().getListener();
         if (listener != null)
             listener.trace(String.format("Block chain size: [ %d ]", this.getSize()));
@@ -173,24 +253,6 @@ public class BlockchainImpl implements Blockchain {
         }
     }
     
-    private void processBlock(Block block) {    	
-    	if(block.isValid()) {
-            if (!block.isGenesis()) {
-                if (!CONFIG.blockChainOnly()) {
-
-                    Wallet wallet = WorldManager.getInstance().getWallet();
-
-                    wallet.addTransactions(block.getTransactionsList());
-                	this.applyBlock(block);
-                    wallet.processBlock(block);
-                }
-            }
-            this.storeBlock(block);
-    	} else {
-    		logger.warn("Invalid block with nr: {}", block.getNumber());
-    	}
-    }
-    
 	private void applyBlock(Block block) {
 
 		int i = 0;
@@ -209,7 +271,6 @@ public class BlockchainImpl implements Blockchain {
 		}
 		
 		this.addReward(block);
-		this.updateTotalDifficulty(block);
 		
         if(block.getNumber() >= CONFIG.traceStartBlock())
         	repository.dumpState(block, totalGasUsed, 0, null);
@@ -243,7 +304,16 @@ public class BlockchainImpl implements Blockchain {
 	@Override
     public void storeBlock(Block block) {
 
-        /* Debug check to see if the state is still as expected */
+        checkStateRoot(block);
+    	
+		this.updateTotalDifficulty(block);
+		this.repository.saveBlock(block, totalDifficulty);
+		this.setLastBlock(block);
+		indexBlock(block);
+    }
+
+    /* Debug check to see if the state is still as expected */
+    private void checkStateRoot(Block block) {
         if(logger.isWarnEnabled()) {
             String blockStateRootHash = Hex.toHexString(block.getStateRoot());
             String worldStateRootHash = Hex.toHexString(WorldManager.getInstance().getRepository().getWorldState().getRootHash());
@@ -253,10 +323,17 @@ public class BlockchainImpl implements Blockchain {
 //                System.exit(-1); // Don't add block
             }
         }
-    	
-		this.repository.saveBlock(block);
-		this.blockCache.put(block.getNumber(), new ByteArrayWrapper(block.getHash()));
-		this.setLastBlock(block);
+    }
+
+    private void indexBlock(Block block) {
+		synchronized (hashIndex) {
+			// a block replacing the ones of the chain above it
+			if (hashIndex.size() > block.getNumber())
+				hashIndex.truncate(block.getNumber());
+			// otherwise the index is behind the store and catches up on demand
+			if (hashIndex.size() == block.getNumber())
+				hashIndex.add(block.getNumber(), block.getHash());
+		}
 		
         if (logger.isDebugEnabled())
 			logger.debug("block added to the blockChain: index: [{}]", block.getNumber());
@@ -491,6 +568,10 @@ public class BlockchainImpl implements Blockchain {
 	public BlockQueue getQueue() {
         return blockQueue;
     }
+
+    public BlockImportPipeline getImportPipeline() {
+        return importPipeline;
+    }
     
 	@Override
     public Map<Long, ByteArrayWrapper> getBlockCache() {
@@ -505,11 +586,14 @@ public class BlockchainImpl implements Blockchain {
 	@Override
     public void setLastBlock(Block block) {
     	this.lastBlock = block;
+    	this.appliedBlock = block;
     }
 
     @Override
     public void close(){
         blockQueue.close();
+        importPipeline.close();
+        hashIndex.close();
     }
 
 	@Override
@@ -517,11 +601,133 @@ public class BlockchainImpl implements Blockchain {
 		return totalDifficulty;
 	}
 
+	@Override
+	public void setTotalDifficulty(BigInteger totalDifficulty) {
+		this.totalDifficulty = totalDifficulty;
+		this.appliedDifficulty = totalDifficulty;
+	}
+
 	@Override
 	public void updateTotalDifficulty(Block block) {
 		if (this.totalDifficulty == null)
-			this.totalDifficulty = block.getCumulativeDifficulty();
+			this.setTotalDifficulty(block.getCumulativeDifficulty());
 		else
-			this.totalDifficulty = totalDifficulty.add(block.getCumulativeDifficulty());
+			this.setTotalDifficulty(totalDifficulty.add(block.getCumulativeDifficulty()));
+	}
+
+	/**
+	 * Copy the hashes of the stored blocks into the index
+	 * up to and including the given block number
+	 */
+	private void indexUpTo(long number) {
+		synchronized (hashIndex) {
+			for (long i = hashIndex.size(); i <= number; ++i) {
+				byte[] hash = repository.getBlockHash(i);
+				if (hash == null) break;
+				hashIndex.add(i, hash);
+			}
+		}
+	}
+
+	/**
+	 * Map view of the number to hash index of the chain,
+	 * the entries are created on access only.
+	 */
+	private class BlockIndexView extends AbstractMap<Long, ByteArrayWrapper> {
+
+		@Override
+		public ByteArrayWrapper get(Object key) {
+			if (!(key instanceof Long)) return null;
+			long number = (Long) key;
+			if (number < 0 || number >= getSize()) return null;
+
+			indexUpTo(number);
+			byte[] hash = hashIndex.getHash(number);
+			return hash == null ? null : new ByteArrayWrapper(hash);
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			if (!(value instanceof ByteArrayWrapper)) return false;
+			indexUpTo(getSize() - 1);
+			return hashIndex.getNumber(((ByteArrayWrapper) value).getData()) >= 0;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return getSize();
+		}
+
+		@Override
+		public Set<Entry<Long, ByteArrayWrapper>> entrySet() {
+			return new AbstractSet<Entry<Long, ByteArrayWrapper>>() {
+
+				@Override
+				public Iterator<Entry<Long, ByteArrayWrapper>> iterator() {
+					final int size = getSize();
+					return new Iterator<Entry<Long, ByteArrayWrapper>>() {
+						long number = 0;
+
+						@Override
+						public boolean hasNext() {
+							return number < size;
+						}
+
+						@Override
+						public Entry<Long, ByteArrayWrapper> next() {
+							if (!hasNext()) throw new NoSuchElementException();
+							Long key = number++;
+							return new SimpleImmutableEntry<>(key, get(key));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return getSize();
+				}
+			};
+		}
+	}
+
+	/**
+	 * The stages of the {@link BlockImportPipeline} importing the downloaded blocks
+	 */
+	private class ImportStages implements BlockImportPipeline.Stages {
+
+		@Override
+		public boolean verify(Block block, Block.HeaderLoader ancestors) {
+			return verifyBlock(block, ancestors);
+		}
+
+		@Override
+		public BigInteger apply(Block block) {
+			return connectBlock(block);
+		}
+
+		@Override
+		public void store(Block block, BigInteger totalDifficulty) {
+			persistBlock(block, totalDifficulty);
+		}
+
+		@Override
+		public void imported(Block block) {
+			onBlockImported(block);
+		}
+
+		@Override
+		public BlockHeader loadHeader(byte[] hash) {
+			return storedHeaders.loadHeader(hash);
+		}
 	}
 }
@@ -3,6 +3,7 @@ package org.ethereum.core;
 import java.math.BigInteger;
 
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.crypto.Keccak256;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.FastByteComparisons;
 import org.spongycastle.util.Arrays;
@@ -59,11 +60,13 @@ public class Miner {
 
 		byte[] hash = HashUtil.sha3(newBlock.getEncodedWithoutNonce());
 		byte[] testNonce = new byte[32];
-		byte[] concat;
+		byte[] concat = Arrays.concatenate(hash, testNonce);
+		byte[] result = new byte[Keccak256.DIGEST_LENGTH];
 		
+		// hashed directly, the candidates are never seen again so they stay out of the sha3 cache
 		while(ByteUtil.increment(testNonce)) {
-			concat = Arrays.concatenate(hash, testNonce);
-			byte[] result = HashUtil.sha3(concat);
+			System.arraycopy(testNonce, 0, concat, hash.length, testNonce.length);
+			Keccak256.digest(concat, 0, concat.length, result, 0);
 			if(FastByteComparisons.compareTo(result, 0, 32, target, 0, 32) < 0) {
 				newBlock.setNonce(testNonce);
 //				System.out.println(Hex.toHexString(newBlock.getEncoded()));
@@ -0,0 +1,47 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.ECKey.ECDSASignature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recovers the senders of the transactions of a block at once.
+ *
+ * Public key recovery is the most expensive part of applying a block full
+ * of plain transfers, so it is done for all the transactions before the state
+ * is changed one transaction after another, see {@link ECKey#recoverBatch}.
+ * The result is kept by the transaction itself, see {@link Transaction#getSender()}.
+ */
+public class SenderRecovery {
+
+    private SenderRecovery() {
+    }
+
+    /**
+     * Recover the senders of the block transactions, returns when all are done
+     */
+    public static void recover(Block block) {
+
+        // the block and its transactions are parsed on the calling thread, the workers only read them
+        List<Transaction> txs = new ArrayList<>();
+        List<byte[]> hashes = new ArrayList<>();
+        List<ECDSASignature> signatures = new ArrayList<>();
+        for (Transaction tx : block.getTransactionsList()) {
+            if (!tx.isParsed()) tx.rlpParse();
+            if (tx.getSignature() == null) continue;
+            txs.add(tx);
+            hashes.add(tx.getHash());
+            signatures.add(tx.getSignature());
+        }
+        if (txs.isEmpty()) return;
+
+        ECKey[] keys = new ECKey[txs.size()];
+        ECKey.recoverBatch(hashes, signatures, keys);
+
+        // the failed ones are left to getSender(), which logs why
+        for (int i = 0; i < keys.length; ++i)
+            if (keys[i] != null) txs.get(i).setSender(keys[i].getAddress());
+    }
+}
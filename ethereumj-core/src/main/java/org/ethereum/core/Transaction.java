@@ -6,13 +6,13 @@ import org.ethereum.crypto.ECKey.MissingPrivateKeyException;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.BigIntegers;
 
 import java.security.SignatureException;
+import java.util.Arrays;
 
 /**
  * A transaction (formally, T) is a single cryptographically 
@@ -58,6 +58,9 @@ public class Transaction {
      * (including public key recovery bits) */
     private ECDSASignature signature;
 
+    /* address recovered from the signature, kept as the recovery is expensive */
+    private volatile byte[] sendAddress;
+
     /* Tx in encoded form */
     private byte[] rlpEncoded;
     private byte[] rlpRaw;
@@ -91,21 +94,20 @@ public class Transaction {
 
     public void rlpParse() {
 
-        RLPList decodedTxList = RLP.decode2(rlpEncoded);
-        RLPList transaction =  (RLPList) decodedTxList.get(0);
+        RLPView transaction = RLPView.wrap(rlpEncoded);
 
-        this.nonce =          ((RLPItem) transaction.get(0)).getRLPData();
-        this.gasPrice =       ((RLPItem) transaction.get(1)).getRLPData();
-        this.gasLimit =       ((RLPItem) transaction.get(2)).getRLPData();
-        this.receiveAddress = ((RLPItem) transaction.get(3)).getRLPData();
-        this.value =          ((RLPItem) transaction.get(4)).getRLPData();
+        this.nonce =          transaction.get(0).getBytes();
+        this.gasPrice =       transaction.get(1).getBytes();
+        this.gasLimit =       transaction.get(2).getBytes();
+        this.receiveAddress = transaction.get(3).getBytes();
+        this.value =          transaction.get(4).getBytes();
 
-        this.data =     ((RLPItem) transaction.get(5)).getRLPData();
+        this.data =     transaction.get(5).getBytes();
         // only parse signature in case tx is signed
-        if(((RLPItem) transaction.get(6)).getRLPData() != null) {
-            byte v =		((RLPItem) transaction.get(6)).getRLPData()[0];
-            byte[] r =		((RLPItem) transaction.get(7)).getRLPData();
-            byte[] s =		((RLPItem) transaction.get(8)).getRLPData();
+        if(transaction.get(6).getPayloadLength() != 0) {
+            byte v =		transaction.get(6).getByte();
+            byte[] r =		transaction.get(7).getBytes();
+            byte[] s =		transaction.get(8).getBytes();
             this.signature = ECDSASignature.fromComponents(r, s, v);
         } else {
             logger.debug("RLP encoded tx is not signed!");
@@ -120,8 +122,11 @@ public class Transaction {
 
     public byte[] getHash() {
         if (!parsed) rlpParse();
-        byte[] plainMsg = this.getEncodedRaw();
-        return HashUtil.sha3(plainMsg);
+        // the signature is not part of the hash, so it never changes after parsing
+        if (hash == null)
+            hash = HashUtil.sha3(this.getEncodedRaw());
+        assert Arrays.equals(hash, HashUtil.sha3(this.getEncodedRaw())) : "Stale transaction hash";
+        return hash;
     }
 
     public byte[] getNonce() {
@@ -181,19 +186,27 @@ public class Transaction {
     }
 
     public byte[] getSender() {
+		if (sendAddress != null) return sendAddress;
 		try {
-			ECKey key = ECKey.signatureToKey(getHash(), getSignature().toBase64());
-			return key.getAddress();
+			ECKey key = ECKey.signatureToKey(getHash(), getSignature());
+			sendAddress = key.getAddress();
+			return sendAddress;
 		} catch (SignatureException e) {
 			logger.error(e.getMessage(), e);
 		}
 		return null;
     }
 
+    /* the sender recovered along with the other transactions of the block, see SenderRecovery */
+    void setSender(byte[] sendAddress) {
+        this.sendAddress = sendAddress;
+    }
+
     public void sign(byte[] privKeyBytes) throws MissingPrivateKeyException {
         byte[] hash = this.getHash();
         ECKey key = ECKey.fromPrivate(privKeyBytes).decompress();
         this.signature = key.sign(hash);
+        this.sendAddress = null;
         this.rlpEncoded = null;
     }
 
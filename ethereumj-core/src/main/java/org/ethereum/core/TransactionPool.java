@@ -0,0 +1,314 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The pending transactions received from the net, not included in a block yet.
+ *
+ * The transactions are indexed by the hash of the signed transaction, see {@link #hashOf(Transaction)},
+ * a transaction already in the pool is dropped before its sender is recovered.
+ * The transactions of a sender are kept in the order of the nonce, a transaction
+ * with the nonce of one in the pool replaces it only for a higher gas price.
+ *
+ * When the pool is full the cheapest transaction that is the last of its sender
+ * makes room for a better paying one, the last transactions of the senders are kept
+ * in the order of the gas price for that. The transactions for a block are
+ * selected by the gas price, in the order of the nonce of every sender.
+ *
+ * The pool may be read by many threads at a time.
+ */
+public class TransactionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger("txs");
+
+    private static class Entry {
+        final Transaction tx;
+        final ByteArrayWrapper hash;
+        final ByteArrayWrapper sender;
+        final BigInteger nonce;
+        final BigInteger gasPrice;
+
+        Entry(Transaction tx, ByteArrayWrapper hash, ByteArrayWrapper sender) {
+            this.tx = tx;
+            this.hash = hash;
+            this.sender = sender;
+            this.nonce = new BigInteger(1, tx.getNonce());
+            this.gasPrice = new BigInteger(1, tx.getGasPrice());
+        }
+    }
+
+    /* the highest gas price first */
+    private static final Comparator<Entry> BY_GAS_PRICE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return e2.gasPrice.compareTo(e1.gasPrice);
+        }
+    };
+
+    /* the lowest gas price first, the sender and the nonce tell the entries apart */
+    private static final Comparator<Entry> BY_LOWEST_PRICE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int result = e1.gasPrice.compareTo(e2.gasPrice);
+            if (result == 0) result = e1.sender.compareTo(e2.sender);
+            if (result == 0) result = e1.nonce.compareTo(e2.nonce);
+            return result;
+        }
+    };
+
+    private final int capacity;
+
+    private final Map<ByteArrayWrapper, Entry> byHash = new ConcurrentHashMap<>();
+    private final Map<ByteArrayWrapper, TreeMap<BigInteger, Entry>> bySender = new HashMap<>();
+    /* the last transaction of every sender, the ones that may be evicted */
+    private final TreeSet<Entry> lastBySender = new TreeSet<>(BY_LOWEST_PRICE);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param capacity - most transactions kept
+     */
+    public TransactionPool(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return the transactions added, not the ones already in the pool,
+     * without a sender or not paying enough to get in
+     */
+    public List<Transaction> addTransactions(Collection<Transaction> transactions) {
+        List<Transaction> added = new ArrayList<>();
+        for (Transaction tx : transactions)
+            if (addTransaction(tx))
+                added.add(tx);
+        return added;
+    }
+
+    /**
+     * @return <code>true</code> if the transaction was added
+     */
+    public boolean addTransaction(Transaction tx) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(hashOf(tx));
+        if (byHash.containsKey(hash))
+            return false;
+
+        // the sender is recovered outside the lock, it is the costly part
+        byte[] senderAddress = tx.getSender();
+        if (senderAddress == null)
+            return false;
+        Entry entry = new Entry(tx, hash, new ByteArrayWrapper(senderAddress));
+
+        lock.writeLock().lock();
+        try {
+            if (byHash.containsKey(hash))
+                return false;
+
+            TreeMap<BigInteger, Entry> senderTxs = bySender.get(entry.sender);
+            Entry replaced = senderTxs == null ? null : senderTxs.get(entry.nonce);
+            if (replaced != null) {
+                if (entry.gasPrice.compareTo(replaced.gasPrice) <= 0)
+                    return false;
+                remove(replaced);
+            } else if (byHash.size() >= capacity && !evictCheaperThan(entry)) {
+                logger.debug("Pool full, tx dropped: [{}]", hash);
+                return false;
+            }
+
+            put(entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the transactions with the nonces of the ones included in a block,
+     * and the ones of the same senders with a lower nonce, they can't be included any more.
+     * The transactions in the pool don't have to be the ones included, the nonce is used up anyway.
+     */
+    public void removeTransactions(List<Transaction> included) {
+        // the senders are recovered outside the lock, most are known by the block import already
+        List<Entry> used = new ArrayList<>(included.size());
+        for (Transaction tx : included) {
+            byte[] senderAddress = tx.getSender();
+            if (senderAddress != null)
+                used.add(new Entry(tx, null, new ByteArrayWrapper(senderAddress)));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : used) {
+                TreeMap<BigInteger, Entry> senderTxs = bySender.get(entry.sender);
+                if (senderTxs == null)
+                    continue;
+
+                lastBySender.remove(senderTxs.lastEntry().getValue());
+                Iterator<Entry> stale = senderTxs.headMap(entry.nonce, true).values().iterator();
+                while (stale.hasNext()) {
+                    Entry removed = stale.next();
+                    logger.info("Clear transaction, hash: [{}]", removed.hash);
+                    byHash.remove(removed.hash);
+                    stale.remove();
+                }
+                if (senderTxs.isEmpty())
+                    bySender.remove(entry.sender);
+                else
+                    lastBySender.add(senderTxs.lastEntry().getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return hash of the signed transaction the pool is indexed by, unlike {@link Transaction#getHash()}
+     * it tells apart the same transaction signed by different senders
+     */
+    public static byte[] hashOf(Transaction tx) {
+        return HashUtil.sha3(tx.getEncoded());
+    }
+
+    /**
+     * @param hash - hash of the signed transaction, see {@link #hashOf(Transaction)}
+     */
+    public boolean contains(byte[] hash) {
+        return byHash.containsKey(new ByteArrayWrapper(hash));
+    }
+
+    /**
+     * @param hash - hash of the signed transaction, see {@link #hashOf(Transaction)}
+     * @return the transaction with the hash, <code>null</code> if it is not in the pool
+     */
+    public Transaction getTransaction(byte[] hash) {
+        Entry entry = byHash.get(new ByteArrayWrapper(hash));
+        return entry == null ? null : entry.tx;
+    }
+
+    /**
+     * @return the transactions of the sender in the order of the nonce
+     */
+    public List<Transaction> getTransactions(byte[] sender) {
+        List<Transaction> txs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<BigInteger, Entry> senderTxs = bySender.get(new ByteArrayWrapper(sender));
+            if (senderTxs != null)
+                for (Entry entry : senderTxs.values())
+                    txs.add(entry.tx);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return txs;
+    }
+
+    /**
+     * Selects the transactions for a block, the best paying first. The transactions
+     * of a sender come in the order of the nonce, a transaction is only selected
+     * after the ones of its sender with a lower nonce.
+     *
+     * @return up to <code>max</code> transactions
+     */
+    public List<Transaction> selectTransactions(int max) {
+        List<Transaction> selected = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // the next transaction of every sender, and where the following ones are
+            PriorityQueue<Entry> next = new PriorityQueue<>(Math.max(1, bySender.size()), BY_GAS_PRICE);
+            Map<ByteArrayWrapper, Iterator<Entry>> following = new HashMap<>();
+            for (Map.Entry<ByteArrayWrapper, TreeMap<BigInteger, Entry>> senderTxs : bySender.entrySet()) {
+                Iterator<Entry> it = senderTxs.getValue().values().iterator();
+                next.add(it.next());
+                following.put(senderTxs.getKey(), it);
+            }
+
+            while (selected.size() < max && !next.isEmpty()) {
+                Entry entry = next.poll();
+                selected.add(entry.tx);
+                Iterator<Entry> it = following.get(entry.sender);
+                if (it.hasNext())
+                    next.add(it.next());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return selected;
+    }
+
+    /**
+     * @return all the transactions in the pool
+     */
+    public List<Transaction> getAll() {
+        List<Transaction> txs = new ArrayList<>(byHash.size());
+        for (Entry entry : byHash.values())
+            txs.add(entry.tx);
+        return txs;
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            byHash.clear();
+            bySender.clear();
+            lastBySender.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* the last transactions of the senders are the ones evicted, the others stay in the order of the nonce */
+    private boolean evictCheaperThan(Entry entry) {
+        Entry cheapest = lastBySender.isEmpty() ? null : lastBySender.first();
+        if (cheapest == null || cheapest.gasPrice.compareTo(entry.gasPrice) >= 0)
+            return false;
+
+        logger.debug("Pool full, tx evicted: [{}]", cheapest.hash);
+        remove(cheapest);
+        return true;
+    }
+
+    private void put(Entry entry) {
+        TreeMap<BigInteger, Entry> senderTxs = bySender.get(entry.sender);
+        if (senderTxs == null) {
+            senderTxs = new TreeMap<>();
+            bySender.put(entry.sender, senderTxs);
+        } else {
+            lastBySender.remove(senderTxs.lastEntry().getValue());
+        }
+        senderTxs.put(entry.nonce, entry);
+        lastBySender.add(senderTxs.lastEntry().getValue());
+        byHash.put(entry.hash, entry);
+    }
+
+    private void remove(Entry entry) {
+        byHash.remove(entry.hash);
+        TreeMap<BigInteger, Entry> senderTxs = bySender.get(entry.sender);
+        lastBySender.remove(senderTxs.lastEntry().getValue());
+        senderTxs.remove(entry.nonce);
+        if (senderTxs.isEmpty())
+            bySender.remove(entry.sender);
+        else
+            lastBySender.add(senderTxs.lastEntry().getValue());
+    }
+}
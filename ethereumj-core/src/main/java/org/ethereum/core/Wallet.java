@@ -1,7 +1,6 @@
 package org.ethereum.core;
 
 import org.ethereum.crypto.ECKey;
-import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.net.submit.WalletTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,8 +49,6 @@ public class Wallet {
 
     private List<WalletListener> listeners = new ArrayList<>();
 
-    private Map<ByteArrayWrapper, Transaction> transactionMap = new HashMap<>();
-
     public void addNewAccount() {
         Account account = new Account();
         String address = Hex.toHexString(account.getEcKey().getAddress());
@@ -156,8 +153,6 @@ public class Wallet {
 
     public void applyTransaction(Transaction transaction) {
 
-        transactionMap.put(new ByteArrayWrapper(transaction.getHash()), transaction);
-
         byte[] senderAddress = transaction.getSender();
         Account sender =  rows.get(Hex.toHexString(senderAddress));
         if (sender != null) {
@@ -21,7 +21,17 @@ import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.security.SecureRandom;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -41,7 +51,9 @@ import org.spongycastle.crypto.signers.ECDSASigner;
 import org.spongycastle.crypto.signers.HMacDSAKCalculator;
 import org.spongycastle.math.ec.ECAlgorithms;
 import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECMultiplier;
 import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
 import org.spongycastle.util.encoders.Base64;
 import org.spongycastle.util.encoders.Hex;
 
@@ -83,6 +95,14 @@ public class ECKey implements Serializable {
     private static final SecureRandom secureRandom;
     private static final long serialVersionUID = -728224901792295832L;
 
+    // Multiplies the generator point using a table that is built on the first use and kept with the point
+    private static final ECMultiplier BASE_MULTIPLIER = new FixedPointCombMultiplier();
+
+    private static final X9IntegerConverter X9 = new X9IntegerConverter();
+
+    // Below this size a slice of a batch is not worth a hand-off to another thread
+    private static final int MIN_BATCH_SLICE = 16;
+
     static {
         // All clients must agree on the curve to use by agreement. Ethereum uses secp256k1.
         X9ECParameters params = SECNamedCurves.getByName("secp256k1");
@@ -151,7 +171,7 @@ public class ECKey implements Serializable {
      * the resulting public key is compressed.
      */
     public static ECKey fromPrivate(BigInteger privKey) {
-        return new ECKey(privKey, compressPoint(CURVE.getG().multiply(privKey)));
+        return new ECKey(privKey, compressPoint(BASE_MULTIPLIER.multiply(CURVE.getG(), privKey)));
     }
 
     /**
@@ -230,7 +250,7 @@ public class ECKey implements Serializable {
      * new BigInteger(1, bytes);</tt>
      */
     public static byte[] publicKeyFromPrivate(BigInteger privKey, boolean compressed) {
-        ECPoint point = CURVE.getG().multiply(privKey);
+        ECPoint point = BASE_MULTIPLIER.multiply(CURVE.getG(), privKey);
         return point.getEncoded(compressed);
     }
 
@@ -442,6 +462,22 @@ public class ECKey implements Serializable {
         BigInteger r = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 1, 33));
         BigInteger s = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 33, 65));
         ECDSASignature sig = new ECDSASignature(r, s);
+        sig.v = (byte) header;
+        return signatureToKey(messageHash, sig);
+    }
+
+    /**
+     * Same as {@link #signatureToKey(byte[], String)} for a signature
+     * that is already parsed, it saves the base64 round trip.
+     * 
+     * @param messageHash a piece of human readable text that was signed
+     * @param sig the signature with the recovery header byte in <code>v</code>
+     * @throws SignatureException If the public key could not be recovered or if there was a signature format error.
+     */
+    public static ECKey signatureToKey(byte[] messageHash, ECDSASignature sig) throws SignatureException {
+        int header = sig.v & 0xFF;
+        if (header < 27 || header > 34)
+            throw new SignatureException("Header byte out of range: " + header);
         boolean compressed = false;
         if (header >= 31) {
             compressed = true;
@@ -506,6 +542,205 @@ public class ECKey implements Serializable {
         return ECKey.verify(sigHash, signature, getPubKey());
     }
 
+    /**
+     * Verifies a list of signatures at once, the hash, the signature and the public key
+     * with the same index belong together.
+     *
+     * The modular inverses of a slice are computed with a single inversion and the slices
+     * are verified by a pool of worker threads.
+     *
+     * @return the bitmap of the valid signatures
+     */
+    public static BitSet verifyBatch(final List<byte[]> hashes, final List<ECDSASignature> signatures,
+                                     final List<byte[]> pubs) {
+        check(hashes.size() == signatures.size() && hashes.size() == pubs.size(), "lists must be of the same size");
+
+        final boolean[] valid = new boolean[hashes.size()];
+        runBatch(hashes.size(), new BatchSlice() {
+            @Override
+            public void run(int from, int to) {
+                verifySlice(hashes, signatures, pubs, from, to, valid);
+            }
+        });
+        return toBitSet(valid);
+    }
+
+    /**
+     * Recovers the public keys of a list of signatures at once, see {@link #signatureToKey(byte[], ECDSASignature)}.
+     * The signatures carry the recovery header byte in <code>v</code>.
+     *
+     * @param keys - receives the recovered keys, <code>null</code> where the recovery failed
+     * @return the bitmap of the recovered keys
+     */
+    public static BitSet recoverBatch(final List<byte[]> hashes, final List<ECDSASignature> signatures,
+                                      final ECKey[] keys) {
+        check(hashes.size() == signatures.size() && keys.length >= hashes.size(), "lists must be of the same size");
+
+        runBatch(hashes.size(), new BatchSlice() {
+            @Override
+            public void run(int from, int to) {
+                recoverSlice(hashes, signatures, from, to, keys);
+            }
+        });
+        BitSet result = new BitSet(hashes.size());
+        for (int i = 0; i < hashes.size(); ++i)
+            if (keys[i] != null) result.set(i);
+        return result;
+    }
+
+    private static void verifySlice(List<byte[]> hashes, List<ECDSASignature> signatures, List<byte[]> pubs,
+                                    int from, int to, boolean[] valid) {
+        BigInteger n = CURVE.getN();
+
+        BigInteger[] s = new BigInteger[to - from];
+        for (int i = from; i < to; ++i) {
+            ECDSASignature sig = signatures.get(i);
+            if (sig.r.signum() > 0 && sig.r.compareTo(n) < 0 && sig.s.signum() > 0 && sig.s.compareTo(n) < 0)
+                s[i - from] = sig.s;
+        }
+        BigInteger[] sInv = invertAll(s, n);
+
+        for (int i = from; i < to; ++i) {
+            BigInteger c = sInv[i - from];
+            if (c == null) continue;
+            try {
+                ECDSASignature sig = signatures.get(i);
+                ECPoint pub = CURVE.getCurve().decodePoint(pubs.get(i));
+                BigInteger e = calculateE(n, hashes.get(i));
+                BigInteger u1 = e.multiply(c).mod(n);
+                BigInteger u2 = sig.r.multiply(c).mod(n);
+                ECPoint point = ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), u1, pub, u2).normalize();
+                valid[i] = !point.isInfinity() && point.getAffineXCoord().toBigInteger().mod(n).equals(sig.r);
+            } catch (RuntimeException e) {
+                // malformed public key, the signature is just not valid
+                logger.debug("Batch verification failed on: {}", i, e);
+            }
+        }
+    }
+
+    private static void recoverSlice(List<byte[]> hashes, List<ECDSASignature> signatures,
+                                     int from, int to, ECKey[] keys) {
+        BigInteger n = CURVE.getN();
+
+        BigInteger[] r = new BigInteger[to - from];
+        for (int i = from; i < to; ++i) {
+            ECDSASignature sig = signatures.get(i);
+            int header = sig.v & 0xFF;
+            if (header < 27 || header > 34 || sig.r.signum() <= 0 || sig.s.signum() < 0) continue;
+            BigInteger rModN = sig.r.mod(n);
+            if (rModN.signum() != 0) r[i - from] = rModN;
+        }
+        BigInteger[] rInv = invertAll(r, n);
+
+        for (int i = from; i < to; ++i) {
+            keys[i] = null;
+            if (rInv[i - from] == null) continue;
+            try {
+                ECDSASignature sig = signatures.get(i);
+                int header = sig.v & 0xFF;
+                boolean compressed = header >= 31;
+                int recId = header - (compressed ? 31 : 27);
+                ECPoint q = recoverPoint(recId, sig, hashes.get(i), rInv[i - from]);
+                if (q != null) keys[i] = ECKey.fromPublicOnly(q.getEncoded(compressed));
+            } catch (RuntimeException e) {
+                // r is not a point of the curve
+                logger.debug("Batch recovery failed on: {}", i, e);
+            }
+        }
+    }
+
+    /* Same as ECDSASigner, the hash is cut to the bit length of the curve order */
+    private static BigInteger calculateE(BigInteger n, byte[] hash) {
+        BigInteger e = new BigInteger(1, hash);
+        int excessBits = hash.length * 8 - n.bitLength();
+        return excessBits > 0 ? e.shiftRight(excessBits) : e;
+    }
+
+    /*
+     * Inverts all the values modulo n with a single modInverse (Montgomery's trick),
+     * null values are skipped and stay null in the result
+     */
+    private static BigInteger[] invertAll(BigInteger[] values, BigInteger n) {
+        BigInteger[] products = new BigInteger[values.length];
+        BigInteger product = BigInteger.ONE;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null) product = product.multiply(values[i]).mod(n);
+            products[i] = product;
+        }
+
+        BigInteger[] inverses = new BigInteger[values.length];
+        BigInteger inverse = product.modInverse(n);
+        for (int i = values.length - 1; i >= 0; --i) {
+            if (values[i] == null) continue;
+            BigInteger before = i == 0 ? BigInteger.ONE : products[i - 1];
+            inverses[i] = inverse.multiply(before).mod(n);
+            inverse = inverse.multiply(values[i]).mod(n);
+        }
+        return inverses;
+    }
+
+    private interface BatchSlice {
+        void run(int from, int to);
+    }
+
+    /*
+     * Splits the batch into equal slices, one per core, small batches
+     * are processed on the calling thread
+     */
+    private static void runBatch(int size, final BatchSlice slice) {
+        int slices = Math.max(1, Math.min(BatchExecutor.THREADS, size / MIN_BATCH_SLICE));
+        if (slices == 1) {
+            slice.run(0, size);
+            return;
+        }
+
+        int sliceSize = (size + slices - 1) / slices;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < size; from += sliceSize) {
+            final int sliceFrom = from;
+            final int sliceTo = Math.min(from + sliceSize, size);
+            futures.add(BatchExecutor.INSTANCE.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    slice.run(sliceFrom, sliceTo);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static BitSet toBitSet(boolean[] values) {
+        BitSet result = new BitSet(values.length);
+        for (int i = 0; i < values.length; ++i)
+            if (values[i]) result.set(i);
+        return result;
+    }
+
+    /* Created on the first batch only */
+    private static class BatchExecutor {
+        static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ECKeyBatch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     /**
      * Returns true if this pubkey is canonical, i.e. the correct length taking into account compression.
      */
@@ -556,6 +791,15 @@ public class ECKey implements Serializable {
         check(sig.r.signum() >= 0, "r must be positive");
         check(sig.s.signum() >= 0, "s must be positive");
         check(messageHash != null, "messageHash must not be null");
+        ECPoint q = recoverPoint(recId, sig, messageHash, sig.r.modInverse(CURVE.getN()));
+        return q == null ? null : ECKey.fromPublicOnly(q.getEncoded(compressed));
+    }
+
+    /*
+     * The recovery itself, the inverse of r is supplied by the caller
+     * so a batch can compute all of them at once
+     */
+    private static ECPoint recoverPoint(int recId, ECDSASignature sig, byte[] messageHash, BigInteger rInv) {
         // 1.0 For j from 0 to h   (h == recId here and the loop is outside this function)
         //   1.1 Let x = r + jn
         BigInteger n = CURVE.getN();  // Curve order.
@@ -578,7 +822,9 @@ public class ECKey implements Serializable {
         // So it's encoded in the recId.
         ECPoint R = decompressKey(x, (recId & 1) == 1);
         //   1.4. If nR != point at infinity, then do another iteration of Step 1 (callers responsibility).
-        if (!R.multiply(n).isInfinity())
+        //        With the cofactor of 1 (secp256k1) every point of the curve has the order n, the costly
+        //        multiplication is only needed for the other curves.
+        if (!CURVE.getH().equals(BigInteger.ONE) && !R.multiply(n).isInfinity())
             return null;
         //   1.5. Compute e from M using Steps 2 and 3 of ECDSA signature verification.
         BigInteger e = new BigInteger(1, messageHash);
@@ -594,17 +840,14 @@ public class ECKey implements Serializable {
         // We can find the additive inverse by subtracting e from zero then taking the mod. For example the additive
         // inverse of 3 modulo 11 is 8 because 3 + 8 mod 11 = 0, and -3 mod 11 = 8.
         BigInteger eInv = BigInteger.ZERO.subtract(e).mod(n);
-        BigInteger rInv = sig.r.modInverse(n);
         BigInteger srInv = rInv.multiply(sig.s).mod(n);
         BigInteger eInvrInv = rInv.multiply(eInv).mod(n);
-        ECPoint.Fp q = (ECPoint.Fp) ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), eInvrInv, R, srInv);
-        return ECKey.fromPublicOnly(q.getEncoded(compressed));
+        return ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), eInvrInv, R, srInv);
     }
 
     /** Decompress a compressed public key (x co-ord and low-bit of y-coord). */
     private static ECPoint decompressKey(BigInteger xBN, boolean yBit) {
-        X9IntegerConverter x9 = new X9IntegerConverter();
-        byte[] compEnc = x9.integerToBytes(xBN, 1 + x9.getByteLength(CURVE.getCurve()));
+        byte[] compEnc = X9.integerToBytes(xBN, 1 + X9.getByteLength(CURVE.getCurve()));
         compEnc[0] = (byte)(yBit ? 0x03 : 0x02);
         return CURVE.getCurve().decodePoint(compEnc);
     }
@@ -0,0 +1,115 @@
+package org.ethereum.crypto;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.LRUMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded memo of hash results, safe for concurrent use.
+ *
+ * The entries are spread over a number of independently locked
+ * LRU segments, so the threads hashing at the same time rarely wait
+ * for each other. Inputs above the size limit are not cached at all,
+ * a cached input is copied so the caller can reuse its array.
+ */
+public class HashCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final LRUMap<ByteArrayWrapper, byte[]>[] segments;
+    private final int maxInput;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity - maximum number of the entries, <code>0</code> disables the cache
+     * @param maxInput - longest input in bytes that is cached
+     */
+    @SuppressWarnings("unchecked")
+    public HashCache(int capacity, int maxInput) {
+        this.maxInput = maxInput;
+
+        if (capacity <= 0) {
+            this.segments = null;
+            return;
+        }
+        int segmentCount = Math.min(SEGMENTS, capacity);
+        this.segments = new LRUMap[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            // the remainder goes to the first segments, the sum is exactly the capacity
+            int segmentCapacity = capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0);
+            segments[i] = new LRUMap<>(Math.min(segmentCapacity, 64), segmentCapacity);
+        }
+    }
+
+    /**
+     * @return the cached hash or <code>null</code> if the caller has to compute it
+     */
+    public byte[] get(byte[] input) {
+        if (!isCacheable(input)) return null;
+
+        ByteArrayWrapper key = new ByteArrayWrapper(input);
+        LRUMap<ByteArrayWrapper, byte[]> segment = segmentFor(key);
+        byte[] result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+        if (result == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return result;
+    }
+
+    public void put(byte[] input, byte[] hash) {
+        if (!isCacheable(input)) return;
+
+        ByteArrayWrapper key = new ByteArrayWrapper(Arrays.copyOf(input, input.length));
+        LRUMap<ByteArrayWrapper, byte[]> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, hash);
+        }
+    }
+
+    public boolean isEnabled() {
+        return segments != null;
+    }
+
+    public int size() {
+        if (segments == null) return 0;
+        int size = 0;
+        for (LRUMap<ByteArrayWrapper, byte[]> segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return share of the lookups answered from the cache, <code>0</code> before any lookup
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private boolean isCacheable(byte[] input) {
+        return segments != null && input.length <= maxInput;
+    }
+
+    private LRUMap<ByteArrayWrapper, byte[]> segmentFor(ByteArrayWrapper key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7FFFFFFF) % segments.length];
+    }
+}
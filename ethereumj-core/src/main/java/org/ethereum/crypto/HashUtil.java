@@ -1,47 +1,56 @@
 package org.ethereum.crypto;
 
 import static java.util.Arrays.copyOfRange;
+import static org.ethereum.config.SystemProperties.CONFIG;
 
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.RLP;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.encoders.Hex;
-import org.ethereum.util.LRUMap;
 
 public class HashUtil {
 
-    private static final int MAX_ENTRIES = 100; // Should contain most commonly hashed values 
-    private static LRUMap<ByteArrayWrapper, byte[]> sha3Cache = new LRUMap<>(0, MAX_ENTRIES);
+    // Should contain most commonly hashed values
+    private static final HashCache sha3Cache = new HashCache(CONFIG.hashCacheSize(), CONFIG.hashCacheMaxInput());
     public static final byte[] EMPTY_DATA_HASH = Hex.decode("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470");
 
-    private static final MessageDigest sha256digest;
-    
-    static {
-        try {
-            sha256digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);  // Can't happen.
+    // MessageDigest keeps state, every thread gets its own
+    private static final ThreadLocal<MessageDigest> sha256digest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);  // Can't happen.
+            }
         }
-    }
+    };
     
     public static byte[] sha256(byte[] input) {
-    	return sha256digest.digest(input);
+    	MessageDigest digest = sha256digest.get();
+    	digest.reset();
+    	return digest.digest(input);
     }
 
 	public static byte[] sha3(byte[] input) {
-            ByteArrayWrapper inputByteArray = new ByteArrayWrapper(input);
-            byte[] result = sha3Cache.get(inputByteArray);
+            byte[] result = sha3Cache.get(input);
             if(result != null)
                     return result;
-            result = SHA3Helper.sha3(input);
-            sha3Cache.put(inputByteArray, result);
+            result = Keccak256.digest(input);
+            sha3Cache.put(input, result);
             return result; 
 	}
 
+    /**
+     * @return the memo of {@link #sha3(byte[])} results, for its hit metrics
+     */
+    public static HashCache getSha3Cache() {
+        return sha3Cache;
+    }
+
     /**
      * Calculates RIGTMOST160(SHA3(input)). This is used in address calculations.
      */
@@ -78,12 +87,11 @@ public class HashUtil {
      * standard procedure in Bitcoin. The resulting hash is in big endian form.
      */
     public static byte[] doubleDigest(byte[] input, int offset, int length) {
-        synchronized (sha256digest) {
-            sha256digest.reset();
-            sha256digest.update(input, offset, length);
-            byte[] first = sha256digest.digest();
-            return sha256digest.digest(first);
-        }
+        MessageDigest digest = sha256digest.get();
+        digest.reset();
+        digest.update(input, offset, length);
+        byte[] first = digest.digest();
+        return digest.digest(first);
     }
 
     /**
@@ -0,0 +1,188 @@
+package org.ethereum.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keccak-256 as used by Ethereum (the original Keccak padding, not the final FIPS-202 one).
+ *
+ * Every thread has its own engine, so hashing doesn't allocate anything
+ * except the result array, and nothing at all when the caller supplies
+ * the output. The input can be a slice of an array or a {@link ByteBuffer}.
+ *
+ * Gives the same result as the spongycastle <code>SHA3Digest(256)</code>.
+ */
+public final class Keccak256 {
+
+    public static final int DIGEST_LENGTH = 32;
+
+    /* 1600 bits of the state minus 2 * 256 bits of capacity */
+    private static final int RATE = 136;
+    private static final int RATE_LANES = RATE / 8;
+
+    private static final long[] ROUND_CONSTANTS = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
+            0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
+            0x000000008000808BL, 0x800000000000008BL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800AL, 0x800000008000000AL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    /* rho rotations and pi lane order, walked together */
+    private static final int[] ROTATIONS = {
+            1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+    };
+    private static final int[] PI_LANES = {
+            10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+    };
+
+    private static final ThreadLocal<Keccak256> ENGINES = new ThreadLocal<Keccak256>() {
+        @Override
+        protected Keccak256 initialValue() {
+            return new Keccak256();
+        }
+    };
+
+    private final long[] state = new long[25];
+    private final long[] column = new long[5];
+    private final byte[] block = new byte[RATE];
+
+    private Keccak256() {
+    }
+
+    public static byte[] digest(byte[] input) {
+        return digest(input, 0, input.length);
+    }
+
+    public static byte[] digest(byte[] input, int offset, int length) {
+        byte[] out = new byte[DIGEST_LENGTH];
+        digest(input, offset, length, out, 0);
+        return out;
+    }
+
+    /**
+     * Hash the slice of the input into the output array
+     *
+     * @param out - receives {@link #DIGEST_LENGTH} bytes starting at <code>outOffset</code>
+     */
+    public static void digest(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        if (offset < 0 || length < 0 || offset + length > input.length)
+            throw new IndexOutOfBoundsException("Slice out of the input: " + offset + ", " + length);
+
+        Keccak256 engine = ENGINES.get();
+        engine.reset();
+
+        int end = offset + length;
+        for (; offset + RATE <= end; offset += RATE)
+            engine.absorb(input, offset);
+
+        engine.absorbLast(input, offset, end - offset);
+        engine.squeeze(out, outOffset);
+    }
+
+    /**
+     * Hash the remaining bytes of the buffer into the output array,
+     * the position of the buffer is moved to its limit
+     *
+     * @param out - receives {@link #DIGEST_LENGTH} bytes starting at <code>outOffset</code>
+     */
+    public static void digest(ByteBuffer input, byte[] out, int outOffset) {
+        if (input.hasArray()) {
+            int offset = input.arrayOffset() + input.position();
+            int length = input.remaining();
+            input.position(input.limit());
+            digest(input.array(), offset, length, out, outOffset);
+            return;
+        }
+
+        Keccak256 engine = ENGINES.get();
+        engine.reset();
+
+        while (input.remaining() >= RATE) {
+            input.get(engine.block, 0, RATE);
+            engine.absorb(engine.block, 0);
+        }
+        int length = input.remaining();
+        input.get(engine.block, 0, length);
+        engine.absorbLast(engine.block, 0, length);
+        engine.squeeze(out, outOffset);
+    }
+
+    private void reset() {
+        Arrays.fill(state, 0L);
+    }
+
+    private void absorb(byte[] data, int offset) {
+        for (int i = 0; i < RATE_LANES; ++i, offset += 8)
+            state[i] ^= readLane(data, offset);
+        permute();
+    }
+
+    private void absorbLast(byte[] data, int offset, int length) {
+        if (data != block || offset != 0)
+            System.arraycopy(data, offset, block, 0, length);
+        Arrays.fill(block, length, RATE, (byte) 0);
+
+        block[length] ^= 0x01;
+        block[RATE - 1] ^= (byte) 0x80;
+        absorb(block, 0);
+    }
+
+    private void squeeze(byte[] out, int outOffset) {
+        for (int i = 0; i < DIGEST_LENGTH / 8; ++i) {
+            long lane = state[i];
+            for (int j = 0; j < 8; ++j)
+                out[outOffset++] = (byte) (lane >>> (8 * j));
+        }
+    }
+
+    private static long readLane(byte[] data, int offset) {
+        return (data[offset] & 0xFFL)
+                | (data[offset + 1] & 0xFFL) << 8
+                | (data[offset + 2] & 0xFFL) << 16
+                | (data[offset + 3] & 0xFFL) << 24
+                | (data[offset + 4] & 0xFFL) << 32
+                | (data[offset + 5] & 0xFFL) << 40
+                | (data[offset + 6] & 0xFFL) << 48
+                | (data[offset + 7] & 0xFFL) << 56;
+    }
+
+    /* Keccak-f[1600], the lane (x, y) is state[x + 5 * y] */
+    private void permute() {
+        long[] a = state;
+        long[] c = column;
+
+        for (int round = 0; round < 24; ++round) {
+
+            // theta
+            for (int x = 0; x < 5; ++x)
+                c[x] = a[x] ^ a[x + 5] ^ a[x + 10] ^ a[x + 15] ^ a[x + 20];
+            for (int x = 0; x < 5; ++x) {
+                long d = c[(x + 4) % 5] ^ Long.rotateLeft(c[(x + 1) % 5], 1);
+                for (int y = 0; y < 25; y += 5)
+                    a[x + y] ^= d;
+            }
+
+            // rho and pi
+            long lane = a[1];
+            for (int i = 0; i < 24; ++i) {
+                int j = PI_LANES[i];
+                long next = a[j];
+                a[j] = Long.rotateLeft(lane, ROTATIONS[i]);
+                lane = next;
+            }
+
+            // chi
+            for (int y = 0; y < 25; y += 5) {
+                for (int x = 0; x < 5; ++x)
+                    c[x] = a[y + x];
+                for (int x = 0; x < 5; ++x)
+                    a[y + x] ^= ~c[(x + 1) % 5] & c[(x + 2) % 5];
+            }
+
+            // iota
+            a[0] ^= ROUND_CONSTANTS[round];
+        }
+    }
+}
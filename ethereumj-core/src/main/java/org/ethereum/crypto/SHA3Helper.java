@@ -14,15 +14,15 @@ public class SHA3Helper {
     }
 
     public static String sha3String(byte[] message) {
-        return sha3String(message, new SHA3Digest(DEFAULT_SIZE), true);
+        return Hex.toHexString(Keccak256.digest(message));
     }
 
     public static byte[] sha3(String message) {
-        return sha3(Hex.decode(message), new SHA3Digest(DEFAULT_SIZE), true);
+        return Keccak256.digest(Hex.decode(message));
     }
 
     public static byte[] sha3(byte[] message) {
-        return sha3(message, new SHA3Digest(DEFAULT_SIZE), true);
+        return Keccak256.digest(message);
     }
 
     protected static String sha3String(String message, Size bitSize) {
@@ -0,0 +1,211 @@
+package org.ethereum.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact in-memory index of the main chain: block number to hash and back.
+ *
+ * Everything is kept outside of the java heap in direct buffers:
+ * <ul>
+ * 	<li>hashes	: dense array of 32 bytes hashes in chunks of {@link #CHUNK_SIZE},
+ * 				the block number is the slot</li>
+ * 	<li>table	: open addressed (linear probing) hash table of <tt>number + 1</tt>,
+ * 				the hash itself is read from the dense array, 0 marks a free slot</li>
+ * </ul>
+ * So one block costs 32 bytes plus 8-16 bytes of the table,
+ * no objects are created per entry. The buffers are dropped by {@link #close()},
+ * their memory goes back with the garbage collection like that of the replaced tables.
+ *
+ * The index grows by appending the next block of the chain,
+ * on a reorganisation it is truncated to the common part of the chains.
+ */
+public class BlockHashIndex {
+
+    public static final int HASH_LENGTH = 32;
+
+    /** Hashes per buffer of the dense array */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    /** Most blocks indexed, the table of them fits a direct buffer */
+    public static final long MAX_SIZE = 1L << 27;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<ByteBuffer> hashes = new ArrayList<>();
+    private ByteBuffer table;
+
+    private long size;
+    private int tableMask;
+
+    public BlockHashIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public BlockHashIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+        this.table = ByteBuffer.allocateDirect(capacity * 2 * 4);
+        this.tableMask = capacity * 2 - 1;
+    }
+
+    /**
+     * Append the hash of the next block
+     *
+     * @param number - must be equal to the current size of the index
+     * @param hash - 32 bytes hash of the block
+     */
+    public synchronized void add(long number, byte[] hash) {
+        if (table == null)
+            throw new IllegalStateException("Index closed");
+        if (number != size)
+            throw new IllegalArgumentException("Expected block number: " + size + ", got: " + number);
+        if (hash == null || hash.length != HASH_LENGTH)
+            throw new IllegalArgumentException("Block hash must be " + HASH_LENGTH + " bytes long");
+        if (size >= MAX_SIZE)
+            throw new IllegalStateException("Index full: " + size + " blocks");
+
+        if (size == (long) hashes.size() * CHUNK_SIZE)
+            hashes.add(ByteBuffer.allocateDirect(CHUNK_SIZE * HASH_LENGTH));
+        if ((size + 1) * 2 > tableMask + 1) growTable();
+
+        ByteBuffer chunk = chunk(size);
+        chunk.position(offset(size));
+        chunk.put(hash);
+        insert(size, hash);
+        ++size;
+    }
+
+    /**
+     * Remove the blocks from the given number on, the ones of a chain
+     * replaced by a reorganisation
+     *
+     * @param number - the first block number removed
+     */
+    public synchronized void truncate(long number) {
+        if (number < 0)
+            throw new IllegalArgumentException("Negative block number: " + number);
+
+        byte[] hash = new byte[HASH_LENGTH];
+        for (long i = size - 1; i >= number; --i) {
+            readHash(i, hash);
+            int slot = slotFor(hash);
+            while (table.getInt(slot * 4) != i + 1)
+                slot = (slot + 1) & tableMask;
+            remove(slot);
+        }
+        size = Math.min(size, number);
+
+        long chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        while (hashes.size() > chunks)
+            hashes.remove(hashes.size() - 1);
+    }
+
+    /**
+     * @return hash of the block or <code>null</code> if the number is not indexed
+     */
+    public synchronized byte[] getHash(long number) {
+        if (number < 0 || number >= size) return null;
+
+        byte[] hash = new byte[HASH_LENGTH];
+        readHash(number, hash);
+        return hash;
+    }
+
+    /**
+     * @return number of the block or <code>-1</code> if the hash is not indexed
+     */
+    public synchronized long getNumber(byte[] hash) {
+        if (table == null || hash == null || hash.length != HASH_LENGTH) return -1;
+
+        int slot = slotFor(hash);
+        while (true) {
+            long entry = table.getInt(slot * 4) & 0xFFFFFFFFL;
+            if (entry == 0) return -1;
+            if (hashEquals(entry - 1, hash)) return entry - 1;
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Drop the buffers, the index is empty afterwards
+     */
+    public synchronized void close() {
+        hashes.clear();
+        table = null;
+        size = 0;
+    }
+
+    private ByteBuffer chunk(long number) {
+        return hashes.get((int) (number / CHUNK_SIZE));
+    }
+
+    private static int offset(long number) {
+        return (int) (number % CHUNK_SIZE) * HASH_LENGTH;
+    }
+
+    private void readHash(long number, byte[] hash) {
+        ByteBuffer chunk = chunk(number);
+        chunk.position(offset(number));
+        chunk.get(hash);
+    }
+
+    private void insert(long number, byte[] hash) {
+        int slot = slotFor(hash);
+        while (table.getInt(slot * 4) != 0)
+            slot = (slot + 1) & tableMask;
+        table.putInt(slot * 4, (int) (number + 1));
+    }
+
+    /* empties the slot and moves back the entries probed past it */
+    private void remove(int slot) {
+        byte[] hash = new byte[HASH_LENGTH];
+        int next = slot;
+        while (true) {
+            next = (next + 1) & tableMask;
+            long entry = table.getInt(next * 4) & 0xFFFFFFFFL;
+            if (entry == 0) break;
+
+            readHash(entry - 1, hash);
+            int home = slotFor(hash);
+            // the entry stays if its home slot is cyclically in (slot, next]
+            boolean stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (stays) continue;
+
+            table.putInt(slot * 4, (int) entry);
+            slot = next;
+        }
+        table.putInt(slot * 4, 0);
+    }
+
+    private boolean hashEquals(long number, byte[] hash) {
+        ByteBuffer chunk = chunk(number);
+        int offset = offset(number);
+        for (int i = 0; i < HASH_LENGTH; ++i)
+            if (chunk.get(offset + i) != hash[i]) return false;
+        return true;
+    }
+
+    private int slotFor(byte[] hash) {
+        // block hashes are uniformly distributed already
+        int h = (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+        return h & tableMask;
+    }
+
+    private void growTable() {
+        int slots = (tableMask + 1) * 2;
+
+        this.table = ByteBuffer.allocateDirect(slots * 4);
+        this.tableMask = slots - 1;
+
+        byte[] hash = new byte[HASH_LENGTH];
+        for (long i = 0; i < size; ++i) {
+            readHash(i, hash);
+            insert(i, hash);
+        }
+    }
+}
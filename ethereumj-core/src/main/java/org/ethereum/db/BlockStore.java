@@ -0,0 +1,274 @@
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPView;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.WriteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.spongycastle.util.Arrays.concatenate;
+
+/**
+ * Indexed storage of the blocks inside the chain database.
+ *
+ * Every entry is stored under a one byte prefix so the lookups
+ * by number and by hash don't need any scan of the database:
+ * <ul>
+ * 	<li>'n' + number	: the hash of the block on the main chain with that number</li>
+ * 	<li>'h' + hash		: the RLP encoded block header</li>
+ * 	<li>'d' + hash		: the RLP encoded block body [txReceipts, uncles]</li>
+ * 	<li>'t' + txHash	: RLP [blockNumber, index] of the transaction in its block</li>
+ * 	<li>"head"			: RLP [hash, totalDifficulty] of the last stored block</li>
+ * </ul>
+ *
+ * A block, its index entry and the head pointer are written in one batch
+ * so the head always refers to a block that is fully stored.
+ *
+ * The header and the body are kept apart, the blocks returned by the
+ * store read their body only when the transactions or the uncles are needed.
+ */
+public class BlockStore {
+
+    private static final Logger logger = LoggerFactory.getLogger("repository");
+
+    private static final byte[] NUMBER_PREFIX = {'n'};
+    private static final byte[] HEADER_PREFIX = {'h'};
+    private static final byte[] BODY_PREFIX   = {'d'};
+    private static final byte[] TX_PREFIX     = {'t'};
+    private static final byte[] HEAD_KEY      = "head".getBytes();
+    /* set while the legacy blocks are re-indexed, the re-indexing resumes if it was cut off */
+    static final byte[] MIGRATION_KEY         = "migration".getBytes();
+
+    /* Blocks used to be stored under the plain 8 bytes block number */
+    private static final int LEGACY_KEY_LENGTH = 8;
+
+    private DatabaseImpl db;
+
+    private byte[] headHash;
+    private BigInteger totalDifficulty;
+
+    public BlockStore(DatabaseImpl db) {
+        this.db = db;
+        loadHead();
+    }
+
+    /**
+     * Store the block, index its number and move the head to it
+     *
+     * @param block - the block to store
+     * @param totalDifficulty - the difficulty of the chain up to and including that block
+     */
+    public void saveBlock(Block block, BigInteger totalDifficulty) {
+
+        byte[] hash = block.getHash();
+
+        WriteBatch batch = db.getDb().createWriteBatch();
+        try {
+            putBlock(batch, block, totalDifficulty);
+            db.getDb().write(batch);
+        } finally {
+            close(batch);
+        }
+
+        this.headHash = hash;
+        this.totalDifficulty = totalDifficulty;
+    }
+
+    private void putBlock(WriteBatch batch, Block block, BigInteger totalDifficulty) {
+        byte[] hash = block.getHash();
+        batch.put(headerKey(hash), block.getHeader().getEncoded());
+        batch.put(bodyKey(hash), block.getEncodedBody());
+        batch.put(numberKey(block.getNumber()), hash);
+        indexTransactions(batch, block);
+        batch.put(HEAD_KEY, encodeHead(hash, totalDifficulty));
+    }
+
+    public Block getBlockByNumber(long number) {
+        byte[] hash = getBlockHashByNumber(number);
+        if (hash == null) return null;
+        return getBlockByHash(hash);
+    }
+
+    public Block getBlockByHash(final byte[] hash) {
+        byte[] header = db.get(headerKey(hash));
+        if (header == null) return null;
+
+        return new Block(header, new Block.BodyLoader() {
+            @Override
+            public byte[] loadBody() {
+                return db.get(bodyKey(hash));
+            }
+        });
+    }
+
+    public BlockHeader getHeaderByNumber(long number) {
+        byte[] hash = getBlockHashByNumber(number);
+        if (hash == null) return null;
+        return getHeaderByHash(hash);
+    }
+
+    public BlockHeader getHeaderByHash(byte[] hash) {
+        byte[] raw = db.get(headerKey(hash));
+        if (raw == null) return null;
+        return new BlockHeader(RLPView.wrap(raw));
+    }
+
+    public byte[] getBlockHashByNumber(long number) {
+        return db.get(numberKey(number));
+    }
+
+    /**
+     * Find a transaction of the stored chain by its hash
+     *
+     * @param txHash - hash of the transaction
+     * @return the receipt holding the transaction or <code>null</code> if it is not stored
+     */
+    public TransactionReceipt getTransactionReceipt(byte[] txHash) {
+        byte[] raw = db.get(txKey(txHash));
+        if (raw == null) return null;
+
+        RLPView location = RLPView.wrap(raw);
+        long number = location.get(0).getLong();
+        int index = (int) location.get(1).getLong();
+
+        Block block = getBlockByNumber(number);
+        if (block == null || block.getTxReceiptList().size() <= index) return null;
+
+        TransactionReceipt receipt = block.getTxReceiptList().get(index);
+        if (!Arrays.equals(txHash, receipt.getTransaction().getHash())) return null;
+        return receipt;
+    }
+
+    /**
+     * @return hash of the last stored block or <code>null</code> for empty store
+     */
+    public byte[] getHeadHash() {
+        return headHash;
+    }
+
+    public Block getHead() {
+        if (headHash == null) return null;
+        return getBlockByHash(headHash);
+    }
+
+    public BigInteger getTotalDifficulty() {
+        return totalDifficulty;
+    }
+
+    public boolean isEmpty() {
+        return headHash == null;
+    }
+
+    /**
+     * Re-index a chain database written with the blocks keyed by their number.
+     * This is the only case the whole chain has to be traversed,
+     * after it the head is read directly on the start.
+     *
+     * Every block is written together with the head and the removal of its legacy key,
+     * a re-indexing cut off is resumed from the head on the next call.
+     *
+     * @return <tt>true</tt> if legacy blocks were found and converted
+     */
+    public boolean migrateLegacyLayout() {
+
+        if (!isEmpty() && db.get(MIGRATION_KEY) == null)
+            return false;
+
+        db.put(MIGRATION_KEY, new byte[]{1});
+        DBIterator iterator = db.iterator();
+        int converted = 0;
+        try {
+            BigInteger difficulty = isEmpty() ? BigInteger.ZERO : totalDifficulty;
+            for (iterator.seekToFirst(); iterator.hasNext();) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                if (entry.getKey().length != LEGACY_KEY_LENGTH) continue;
+
+                Block block = new Block(entry.getValue());
+                difficulty = difficulty.add(block.getCumulativeDifficulty());
+
+                WriteBatch batch = db.getDb().createWriteBatch();
+                try {
+                    putBlock(batch, block, difficulty);
+                    batch.delete(entry.getKey());
+                    db.getDb().write(batch);
+                } finally {
+                    close(batch);
+                }
+                this.headHash = block.getHash();
+                this.totalDifficulty = difficulty;
+                ++converted;
+            }
+        } finally {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        db.delete(MIGRATION_KEY);
+
+        if (converted > 0)
+            logger.info("Chain database re-indexed: [{}] blocks", converted);
+        return converted > 0;
+    }
+
+    private void indexTransactions(WriteBatch batch, Block block) {
+        byte[] numberEl = RLP.encodeBigInteger(BigInteger.valueOf(block.getNumber()));
+        List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < txs.size(); ++i) {
+            byte[] location = RLP.encodeList(numberEl, RLP.encodeInt(i));
+            batch.put(txKey(txs.get(i).getHash()), location);
+        }
+    }
+
+    private void loadHead() {
+        byte[] raw = db.get(HEAD_KEY);
+        if (raw == null) return;
+
+        RLPView head = RLPView.wrap(raw);
+        this.headHash = head.get(0).getBytes();
+        this.totalDifficulty = head.get(1).getBigInteger();
+    }
+
+    private static byte[] encodeHead(byte[] hash, BigInteger totalDifficulty) {
+        byte[] hashEl = RLP.encodeElement(hash);
+        byte[] tdEl   = RLP.encodeBigInteger(totalDifficulty == null ? BigInteger.ZERO : totalDifficulty);
+        return RLP.encodeList(hashEl, tdEl);
+    }
+
+    private static byte[] numberKey(long number) {
+        return concatenate(NUMBER_PREFIX, ByteUtil.longToBytes(number));
+    }
+
+    private static byte[] txKey(byte[] txHash) {
+        return concatenate(TX_PREFIX, txHash);
+    }
+
+    private static byte[] headerKey(byte[] hash) {
+        return concatenate(HEADER_PREFIX, hash);
+    }
+
+    private static byte[] bodyKey(byte[] hash) {
+        return concatenate(BODY_PREFIX, hash);
+    }
+
+    private void close(WriteBatch batch) {
+        try {
+            batch.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+}
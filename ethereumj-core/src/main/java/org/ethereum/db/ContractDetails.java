@@ -6,12 +6,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.TrieRootBuilder;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPItem;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.vm.DataWord;
 
 /**
@@ -27,8 +27,6 @@ public class ContractDetails {
 
     private byte[] code;
 
-    private Trie storageTrie = new TrieImpl(null);
-
     public ContractDetails() {
     }
 	
@@ -43,7 +41,6 @@ public class ContractDetails {
 
         if (value.equals(DataWord.ZERO)) {
 
-            storageTrie.delete(key.getData());
             int index = storageKeys.indexOf(key);
             if (index != -1) {
                 storageKeys.remove(index);
@@ -51,7 +48,6 @@ public class ContractDetails {
             }
         } else {
 
-            storageTrie.update(key.getData(), RLP.encodeElement(value.getNoLeadZeroesData()));
             int index = storageKeys.indexOf(key);
             if (index != -1) {
                 storageKeys.remove(index);
@@ -87,13 +83,14 @@ public class ContractDetails {
 
     public byte[] getStorageHash() {
 
-    	storageTrie = new TrieImpl(null);
         // calc the trie for root hash
+        List<byte[]> keys = new ArrayList<>(storageKeys.size());
+        List<byte[]> values = new ArrayList<>(storageKeys.size());
         for (int i = 0; i < storageKeys.size(); ++i){
-			storageTrie.update(storageKeys.get(i).getData(), RLP
-					.encodeElement(storageValues.get(i).getNoLeadZeroesData()));
+            keys.add(storageKeys.get(i).getData());
+            values.add(RLP.encodeElement(storageValues.get(i).getNoLeadZeroesData()));
         }
-        return storageTrie.getRootHash();
+        return TrieRootBuilder.getRootHash(keys, values);
     }
 
 	public void decode(byte[] rlpCode) {
@@ -119,12 +116,6 @@ public class ContractDetails {
 			storageValues.add(new DataWord(rlpItem.getRLPData()));
 		}
 
-		for (int i = 0; i < keys.size(); ++i) {
-			DataWord key = storageKeys.get(i);
-			DataWord value = storageValues.get(i);
-            storageTrie.update(key.getData(), RLP.encodeElement(value.getNoLeadZeroesData()));
-		}
-
 		this.code = code.getRLPData();
 		this.rlpEncoded = rlpCode;
 	}
@@ -134,24 +125,22 @@ public class ContractDetails {
 		if (rlpEncoded == null) {
 
 			int size = storageKeys == null ? 0 : storageKeys.size();
-
-			byte[][] keys = new byte[size][];
-			byte[][] values = new byte[size][];
-
-			for (int i = 0; i < size; ++i) {
-				DataWord key = storageKeys.get(i);
-				keys[i] = RLP.encodeElement(key.getData());
-			}
-			for (int i = 0; i < size; ++i) {
-				DataWord value = storageValues.get(i);
-				values[i] = RLP.encodeElement(value.getNoLeadZeroesData());
-			}
-
-			byte[] rlpKeysList = RLP.encodeList(keys);
-			byte[] rlpValuesList = RLP.encodeList(values);
-			byte[] rlpCode = RLP.encodeElement(code);
-
-			this.rlpEncoded = RLP.encodeList(rlpKeysList, rlpValuesList, rlpCode);
+			RLPWriter writer = new RLPWriter().startList();
+
+			writer.startList();
+			for (int i = 0; i < size; ++i)
+				writer.writeElement(storageKeys.get(i).getData());
+			writer.endList();
+
+			writer.startList();
+			for (int i = 0; i < size; ++i)
+				writer.writeElement(storageValues.get(i).getNoLeadZeroesData());
+			writer.endList();
+
+			this.rlpEncoded = writer
+					.writeElement(code)
+					.endList()
+					.toByteArray();
 		}
 		return rlpEncoded;
 	}
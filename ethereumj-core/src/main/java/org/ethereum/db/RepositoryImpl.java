@@ -3,6 +3,8 @@ package org.ethereum.db;
 import org.codehaus.plexus.util.FileUtils;
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.core.Genesis;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.facade.Blockchain;
@@ -68,6 +70,8 @@ public class RepositoryImpl implements Repository {
     private DatabaseImpl chainDB 	= null;
     private DatabaseImpl detailsDB 	= null;
     private DatabaseImpl stateDB 	= null;
+
+    private BlockStore blockStore;
     
     /**
      * Create a new Repository DAO 
@@ -81,6 +85,7 @@ public class RepositoryImpl implements Repository {
     
     public RepositoryImpl(String blockChainDbName, String detailsDbName, String stateDbName) {
     	chainDB 			= new DatabaseImpl(blockChainDbName);
+        blockStore          = new BlockStore(chainDB);
         detailsDB     		= new DatabaseImpl(detailsDbName);
         contractDetailsDB 	= new TrackDatabase(detailsDB);
         stateDB 			= new DatabaseImpl(stateDbName);
@@ -118,62 +123,69 @@ public class RepositoryImpl implements Repository {
     }
     
     public Block getBlock(long blockNr) {
-        byte[] raw = chainDB.get(ByteUtil.longToBytes(blockNr));
-        if (raw == null) return null;
-    	return new Block(raw);
+        return blockStore.getBlockByNumber(blockNr);
     }
-    
-    public void saveBlock(Block block) {
-    	this.chainDB.put(ByteUtil.longToBytes(block.getNumber()), block.getEncoded());
+
+    public Block getBlockByHash(byte[] hash) {
+        return blockStore.getBlockByHash(hash);
+    }
+
+    public byte[] getBlockHash(long blockNr) {
+        return blockStore.getBlockHashByNumber(blockNr);
+    }
+
+    public BlockHeader getBlockHeader(byte[] hash) {
+        return blockStore.getHeaderByHash(hash);
+    }
+
+    public TransactionReceipt getTransactionReceipt(byte[] txHash) {
+        return blockStore.getTransactionReceipt(txHash);
+    }
+
+    public void saveBlock(Block block, BigInteger totalDifficulty) {
+        this.blockStore.saveBlock(block, totalDifficulty);
 
 //        this.worldState.cleanCacheGarbage();
     	this.worldState.sync();
     }
+
+    public void saveBlockWithoutState(Block block, BigInteger totalDifficulty) {
+        this.blockStore.saveBlock(block, totalDifficulty);
+    }
 	
 	public Blockchain loadBlockchain() {
 		Blockchain blockchain = WorldManager.getInstance().getBlockchain();
-		DBIterator iterator = chainDB.iterator();
-		try {
-			if (!iterator.hasNext()) {
-                logger.info("DB is empty - adding Genesis");
-                for (String address : Genesis.getPremine()) {
-            		this.createAccount(Hex.decode(address));
-            		this.addBalance   (Hex.decode(address), Genesis.PREMINE_AMOUNT);
-				}
-                blockchain.storeBlock(Genesis.getInstance());
-
-                EthereumListener listener =  WorldManager.getInstance().getListener();
-                if (listener != null){
-                    listener.onPreloadedBlock(Genesis.getInstance());
-                }
-
-               	dumpState(Genesis.getInstance(), 0, 0, null);
-            } else {
-            	logger.debug("Displaying blocks stored in DB sorted on blocknumber");
-
-            	for (iterator.seekToFirst(); iterator.hasNext();) {
-            		Block block = new Block(iterator.next().getValue());
-            		blockchain.getBlockCache().put(block.getNumber(), new ByteArrayWrapper(block.getHash()));
-            		blockchain.setLastBlock(block);
-            		blockchain.updateTotalDifficulty(block);
-                    EthereumListener listener =  WorldManager.getInstance().getListener();
-                    if (listener != null){
-                        listener.onPreloadedBlock(block);
-                    }
-    	            logger.debug("Block #{} -> {}", block.getNumber(), block.toFlatString());
-            	}
-				logger.info("*** Loaded up to block [{}] with stateRoot [{}]", 
-						blockchain.getLastBlock().getNumber(), 
-						Hex.toHexString(blockchain.getLastBlock().getStateRoot()));
+
+		blockStore.migrateLegacyLayout();
+
+		if (blockStore.isEmpty()) {
+            logger.info("DB is empty - adding Genesis");
+            for (String address : Genesis.getPremine()) {
+                this.createAccount(Hex.decode(address));
+                this.addBalance   (Hex.decode(address), Genesis.PREMINE_AMOUNT);
             }
-		} finally {
-			// Make sure you close the iterator to avoid resource leaks.
-			try {
-				iterator.close();
-			} catch (IOException e) {
-				logger.error(e.getMessage(), e);
-			}
-		}
+            blockchain.storeBlock(Genesis.getInstance());
+
+            EthereumListener listener =  WorldManager.getInstance().getListener();
+            if (listener != null){
+                listener.onPreloadedBlock(Genesis.getInstance());
+            }
+
+            dumpState(Genesis.getInstance(), 0, 0, null);
+        } else {
+            // The head pointer is read directly, no need to traverse the chain
+            Block head = blockStore.getHead();
+            blockchain.setLastBlock(head);
+            blockchain.setTotalDifficulty(blockStore.getTotalDifficulty());
+
+            EthereumListener listener =  WorldManager.getInstance().getListener();
+            if (listener != null){
+                listener.onPreloadedBlock(head);
+            }
+            logger.info("*** Loaded up to block [{}] with stateRoot [{}]",
+                    head.getNumber(),
+                    Hex.toHexString(head.getStateRoot()));
+        }
 
         if (CONFIG.rootHashStart() != null){
 
@@ -463,6 +475,29 @@ public class RepositoryImpl implements Repository {
         }
     }
 
+    public boolean exportState(File file) {
+        try {
+            new StateSnapshot((TrieImpl) worldState, detailsDB).exportTo(file);
+            return true;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public boolean importState(File file, byte[] expectedRoot) {
+        TrieImpl state = new TrieImpl(stateDB.getDb());
+        try {
+            if (!new StateSnapshot(state, detailsDB).importFrom(file, expectedRoot))
+                return false;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+        this.worldState.setRoot(state.getRootHash());
+        return true;
+    }
+
     public DBIterator getAccountsIterator() {
     	return detailsDB.iterator();
     }
@@ -0,0 +1,309 @@
+package org.ethereum.db;
+
+import org.ethereum.trie.TrieImpl;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.WriteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Binary snapshot of the world state: every account with its state, code and storage.
+ *
+ * The file is written and read as a stream, so only a bounded number
+ * of accounts is held in memory at any time. Layout, numbers are big endian:
+ * <pre>
+ * 	magic, version, stateRoot
+ * 	[addrLength][address][stateLength][AccountState RLP][detailsLength][ContractDetails RLP]
+ * 	... one record per account ...
+ * 	0, number of records
+ * </pre>
+ *
+ * The export walks the accounts reachable from the state root. The import is done
+ * in two passes over the file. The first one rebuilds the state trie and compares
+ * its root with the expected one, only if they match the trie is synced to the disk,
+ * the contract details of the old state are dropped and the second pass writes the new ones.
+ */
+public class StateSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger("repository");
+
+    private static final int MAGIC   = 0x45534e50; // "ESNP"
+    private static final int VERSION = 1;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int QUEUE_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private TrieImpl worldState;
+    private DatabaseImpl detailsDB;
+
+    /**
+     * @param worldState - trie of the account states, for import it should be empty
+     * @param detailsDB - database of the contract details keyed by address
+     */
+    public StateSnapshot(TrieImpl worldState, DatabaseImpl detailsDB) {
+        this.worldState = worldState;
+        this.detailsDB = detailsDB;
+    }
+
+    /**
+     * Write the current state of the world to the file
+     *
+     * @return number of the exported accounts
+     */
+    public long exportTo(File file) throws IOException {
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        final long[] records = {0};
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeBytes(out, worldState.getRootHash());
+
+            // the accounts reachable from the root, the details of the others are left out
+            final IOException[] error = {null};
+            worldState.scanLeaves(new TrieImpl.LeafAction() {
+                @Override
+                public void doOnLeaf(byte[] address, byte[] state) {
+                    if (error[0] != null || state.length == 0) return;
+                    byte[] details = detailsDB.get(address);
+                    try {
+                        writeBytes(out, address);
+                        writeBytes(out, state);
+                        writeBytes(out, details == null ? new byte[0] : details);
+                        ++records[0];
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null) throw error[0];
+
+            out.writeInt(0);
+            out.writeLong(records[0]);
+        } finally {
+            out.close();
+        }
+
+        logger.info("State snapshot exported: [{}] accounts, root: [{}]",
+                records[0], Hex.toHexString(worldState.getRootHash()));
+        return records[0];
+    }
+
+    /**
+     * Load the state from the file
+     *
+     * @param expectedRoot - root the rebuilt state must match,
+     * 		<code>null</code> to trust the root stored in the file
+     * @return <tt>true</tt> if the state was verified and stored
+     */
+    public boolean importFrom(File file, byte[] expectedRoot) throws IOException {
+
+        SnapshotReader reader = new SnapshotReader(file);
+        byte[] snapshotRoot;
+        try {
+            snapshotRoot = reader.readHeader();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        if (expectedRoot == null) expectedRoot = snapshotRoot;
+
+        // pass 1: parsing runs in its own thread while the trie is updated
+        BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        Thread parser = startParser(reader, queue);
+        long records = 0;
+        try {
+            for (Record record = take(queue); record != Record.END; record = take(queue)) {
+                worldState.update(record.address, record.state);
+                ++records;
+            }
+        } finally {
+            parser.interrupt();
+        }
+        if (reader.error != null) {
+            worldState.undo();
+            throw reader.error;
+        }
+
+        if (!Arrays.equals(expectedRoot, worldState.getRootHash())) {
+            logger.error("State snapshot rejected, root: [{}] expected: [{}]",
+                    Hex.toHexString(worldState.getRootHash()), Hex.toHexString(expectedRoot));
+            worldState.undo();
+            return false;
+        }
+        worldState.sync();
+
+        // pass 2: bulk load of the contract details, the ones of the old state are dropped
+        clearDetails();
+        reader = new SnapshotReader(file);
+        WriteBatch batch = detailsDB.getDb().createWriteBatch();
+        try {
+            reader.readHeader();
+            int batched = 0;
+            for (Record record = reader.next(); record != Record.END; record = reader.next()) {
+                if (record.details.length == 0) continue;
+                batch.put(record.address, record.details);
+                if (++batched == BATCH_SIZE) {
+                    detailsDB.getDb().write(batch);
+                    batch.close();
+                    batch = detailsDB.getDb().createWriteBatch();
+                    batched = 0;
+                }
+            }
+            detailsDB.getDb().write(batch);
+        } finally {
+            batch.close();
+            reader.close();
+        }
+
+        logger.info("State snapshot imported: [{}] accounts, root: [{}]",
+                records, Hex.toHexString(expectedRoot));
+        return true;
+    }
+
+    private void clearDetails() throws IOException {
+        DBIterator iterator = detailsDB.iterator();
+        WriteBatch batch = detailsDB.getDb().createWriteBatch();
+        try {
+            int batched = 0;
+            for (iterator.seekToFirst(); iterator.hasNext();) {
+                batch.delete(iterator.next().getKey());
+                if (++batched == BATCH_SIZE) {
+                    detailsDB.getDb().write(batch);
+                    batch.close();
+                    batch = detailsDB.getDb().createWriteBatch();
+                    batched = 0;
+                }
+            }
+            detailsDB.getDb().write(batch);
+        } finally {
+            batch.close();
+            iterator.close();
+        }
+    }
+
+    private Thread startParser(final SnapshotReader reader, final BlockingQueue<Record> queue) {
+        Thread parser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Record record;
+                    do {
+                        record = reader.next();
+                        queue.put(record);
+                    } while (record != Record.END);
+                } catch (IOException e) {
+                    reader.error = e;
+                    try {
+                        queue.put(Record.END);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    reader.close();
+                }
+            }
+        }, "SnapshotParser");
+        parser.setDaemon(true);
+        parser.start();
+        return parser;
+    }
+
+    private static Record take(BlockingQueue<Record> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("State snapshot import interrupted", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static class Record {
+
+        static final Record END = new Record(null, null, null);
+
+        final byte[] address;
+        final byte[] state;
+        final byte[] details;
+
+        Record(byte[] address, byte[] state, byte[] details) {
+            this.address = address;
+            this.state = state;
+            this.details = details;
+        }
+    }
+
+    private static class SnapshotReader {
+
+        private DataInputStream in;
+        private long records;
+        volatile IOException error;
+
+        SnapshotReader(File file) throws IOException {
+            this.in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        byte[] readHeader() throws IOException {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a state snapshot file");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported state snapshot version: " + version);
+            return readBytes(in.readInt());
+        }
+
+        Record next() throws IOException {
+            int length = in.readInt();
+            if (length == 0) {
+                long expected = in.readLong();
+                if (expected != records)
+                    throw new IOException("Truncated state snapshot: " + records + " of " + expected + " accounts");
+                return Record.END;
+            }
+            byte[] address = readBytes(length);
+            byte[] state   = readBytes(in.readInt());
+            byte[] details = readBytes(in.readInt());
+            ++records;
+            return new Record(address, state, details);
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            if (length < 0) throw new IOException("Corrupted state snapshot");
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return data;
+        }
+    }
+}
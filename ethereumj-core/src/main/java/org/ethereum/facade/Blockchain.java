@@ -5,6 +5,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.net.BlockQueue;
 import org.ethereum.core.Genesis;
@@ -24,9 +26,12 @@ public interface Blockchain  {
     public BlockQueue getQueue();
     public void close();
 	public void updateTotalDifficulty(Block block);
+	public void setTotalDifficulty(BigInteger totalDifficulty);
     public BigInteger getTotalDifficulty();
 	public byte[] getLatestBlockHash();
     public List<byte[]> getListOfHashesStartFrom(byte[] hash, int qty);
     public Block getBlockByHash(byte[] hash);
+    public BlockHeader getBlockHeaderByHash(byte[] hash);
+    public TransactionReceipt getTransactionByHash(byte[] hash);
 
 }
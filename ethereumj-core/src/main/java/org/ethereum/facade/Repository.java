@@ -1,9 +1,12 @@
 package org.ethereum.facade;
 
+import java.io.File;
 import java.math.BigInteger;
 
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.trie.Trie;
 import org.ethereum.vm.DataWord;
@@ -101,10 +104,22 @@ public interface Repository {
     
     /**
      * Save block and post state in the database
+     * and make the block the head of the stored chain
      *     
      * @param block the <code>Block</code> to store
+     * @param totalDifficulty of the chain up to and including this block
      */
-    public void saveBlock(Block block);
+    public void saveBlock(Block block, BigInteger totalDifficulty);
+
+    /**
+     * Save block in the database and make the block the head
+     * of the stored chain, the world state is not written,
+     * the caller syncs it on its own, see {@link Trie#sync()}
+     *
+     * @param block the <code>Block</code> to store
+     * @param totalDifficulty of the chain up to and including this block
+     */
+    public void saveBlockWithoutState(Block block, BigInteger totalDifficulty);
 
     /**
      * Retrieve block from the blockchain
@@ -113,6 +128,41 @@ public interface Repository {
      * @return Block containing header, uncles and transactions
      */
     public Block getBlock(long blockNr);
+
+    /**
+     * Retrieve block from the blockchain by its hash
+     * 
+     * @param hash of the block
+     * @return Block containing header, uncles and transactions 
+     * 		or <code>null</code> if no such block is stored
+     */
+    public Block getBlockByHash(byte[] hash);
+
+    /**
+     * Retrieve the hash of the block with the given number 
+     * without reading the block itself
+     * 
+     * @param blockNr number of block in the blockchain
+     * @return hash of the block or <code>null</code> if no such block is stored
+     */
+    public byte[] getBlockHash(long blockNr);
+
+    /**
+     * Retrieve the header of a block without reading its transactions and uncles
+     * 
+     * @param hash of the block
+     * @return BlockHeader or <code>null</code> if no such block is stored
+     */
+    public BlockHeader getBlockHeader(byte[] hash);
+
+    /**
+     * Retrieve a transaction of the stored chain by its hash
+     * 
+     * @param txHash hash of the transaction
+     * @return TransactionReceipt holding the transaction 
+     * 		or <code>null</code> if no such transaction is stored
+     */
+    public TransactionReceipt getTransactionReceipt(byte[] txHash);
     
     /**
      * Retrieve balance of an account
@@ -151,6 +201,25 @@ public interface Repository {
      * @return the <code>Blockchain</code> object
      */
     public Blockchain loadBlockchain();
+
+    /**
+     * Write all the accounts of the current state with their code 
+     * and storage into a binary snapshot file
+     * 
+     * @param file to write the snapshot to
+     * @return <tt>true</tt> if the snapshot was written
+     */
+    public boolean exportState(File file);
+
+    /**
+     * Replace the current state by the one from a snapshot file, 
+     * nothing is stored unless the rebuilt state matches the expected root
+     * 
+     * @param file written by {@link #exportState(File)}
+     * @param expectedRoot of the state, <code>null</code> to trust the root stored in the file
+     * @return <tt>true</tt> if the state was verified and loaded
+     */
+    public boolean importState(File file, byte[] expectedRoot);
     
     /**
      * Dump the full state of the current repository into a file with JSON format
@@ -0,0 +1,253 @@
+package org.ethereum.listener;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.net.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes the events on to the listeners subscribed, on threads of its own,
+ * so a slow listener doesn't hold up the network threads and the block import.
+ * Every listener gets its events in order, one at a time, on a thread of the pool,
+ * so a slow listener doesn't hold up the others either.
+ *
+ * Every listener has a queue of the events not passed to it yet. When the queue
+ * is full the messages and the traces are dropped and the blocks are coalesced,
+ * the listener gets the latest block once it catches up. The other events
+ * are rare, they are queued over the capacity up to as many again and dropped after that.
+ */
+public class EthereumListenerBus implements EthereumListener {
+
+    private static final Logger logger = LoggerFactory.getLogger("general");
+
+    /* what is done with an event when the queue of the listener is full */
+    private enum Overflow { DROP, COALESCE, KEEP }
+
+    private static abstract class Event {
+        final Overflow overflow;
+
+        Event(Overflow overflow) {
+            this.overflow = overflow;
+        }
+
+        abstract void dispatch(EthereumListener listener);
+    }
+
+    private class Subscriber implements Runnable {
+        final EthereumListener listener;
+        final Queue<Event> events = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        /* the latest block while the queue is full */
+        final AtomicReference<Event> coalesced = new AtomicReference<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Subscriber(EthereumListener listener) {
+            this.listener = listener;
+        }
+
+        void post(Event event) {
+            if (size.get() >= capacity) {
+                if (event.overflow == Overflow.DROP) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (event.overflow == Overflow.COALESCE) {
+                    if (coalesced.getAndSet(event) != null)
+                        dropped.incrementAndGet();
+                    schedule();
+                    return;
+                }
+                if (size.get() >= 2 * capacity) {
+                    logger.warn("Listener too slow, event dropped: {}", listener);
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+            // the block coalesced goes before the later events
+            Event block = coalesced.getAndSet(null);
+            if (block != null)
+                enqueue(block);
+            enqueue(event);
+            schedule();
+        }
+
+        private void enqueue(Event event) {
+            size.incrementAndGet();
+            events.add(event);
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Event event;
+                while ((event = events.poll()) != null) {
+                    size.decrementAndGet();
+                    dispatch(event);
+                }
+                if ((event = coalesced.getAndSet(null)) != null)
+                    dispatch(event);
+                scheduled.set(false);
+            } while ((!events.isEmpty() || coalesced.get() != null) && scheduled.compareAndSet(false, true));
+        }
+
+        private void dispatch(Event event) {
+            try {
+                event.dispatch(listener);
+            } catch (Throwable t) {
+                logger.error("Listener failed: " + listener, t);
+            }
+        }
+    }
+
+    private final int capacity;
+    private final ExecutorService executor;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity - events kept for a listener before they are dropped or coalesced
+     */
+    public EthereumListenerBus(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        // a thread per listener busy at a time, the runs of a listener never overlap
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "EthereumListenerBus-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void subscribe(EthereumListener listener) {
+        subscribers.add(new Subscriber(listener));
+    }
+
+    public void unsubscribe(EthereumListener listener) {
+        for (Subscriber subscriber : subscribers)
+            if (subscriber.listener == listener)
+                subscribers.remove(subscriber);
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * @return number of the events dropped or coalesced since the start
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop the dispatch threads, the events still queued are not passed on
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void post(Event event) {
+        for (Subscriber subscriber : subscribers)
+            subscriber.post(event);
+    }
+
+    @Override
+    public void trace(final String output) {
+        post(new Event(Overflow.DROP) {
+            void dispatch(EthereumListener listener) {
+                listener.trace(output);
+            }
+        });
+    }
+
+    @Override
+    public void onBlock(final Block block) {
+        post(new Event(Overflow.COALESCE) {
+            void dispatch(EthereumListener listener) {
+                listener.onBlock(block);
+            }
+        });
+    }
+
+    @Override
+    public void onPreloadedBlock(final Block block) {
+        post(new Event(Overflow.KEEP) {
+            void dispatch(EthereumListener listener) {
+                listener.onPreloadedBlock(block);
+            }
+        });
+    }
+
+    @Override
+    public void onRecvMessage(final Message message) {
+        post(new Event(Overflow.DROP) {
+            void dispatch(EthereumListener listener) {
+                listener.onRecvMessage(message);
+            }
+        });
+    }
+
+    @Override
+    public void onSendMessage(final Message message) {
+        post(new Event(Overflow.DROP) {
+            void dispatch(EthereumListener listener) {
+                listener.onSendMessage(message);
+            }
+        });
+    }
+
+    @Override
+    public void onPeerDisconnect(final String host, final long port) {
+        post(new Event(Overflow.KEEP) {
+            void dispatch(EthereumListener listener) {
+                listener.onPeerDisconnect(host, port);
+            }
+        });
+    }
+
+    @Override
+    public void onPendingTransactionsReceived(final Set<Transaction> transactions) {
+        post(new Event(Overflow.KEEP) {
+            void dispatch(EthereumListener listener) {
+                listener.onPendingTransactionsReceived(transactions);
+            }
+        });
+    }
+
+    @Override
+    public void onSyncDone() {
+        post(new Event(Overflow.KEEP) {
+            void dispatch(EthereumListener listener) {
+                listener.onSyncDone();
+            }
+        });
+    }
+}
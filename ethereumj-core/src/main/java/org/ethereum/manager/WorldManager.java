@@ -6,17 +6,19 @@ import java.util.*;
 
 import org.ethereum.core.BlockchainImpl;
 import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionPool;
 import org.ethereum.core.Wallet;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.RepositoryImpl;
 import org.ethereum.facade.Blockchain;
 import org.ethereum.facade.Repository;
 import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerBus;
+import org.ethereum.net.PeerEventLoopGroup;
 import org.ethereum.net.client.PeerClient;
 import org.ethereum.net.peerdiscovery.PeerDiscovery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.spongycastle.util.encoders.Hex;
 
 /**
  * WorldManager is a singleton containing references to different parts of the system.
@@ -35,10 +37,10 @@ public class WorldManager {
     private PeerClient activePeer;
     private PeerDiscovery peerDiscovery;
     
-    private final Set<Transaction> pendingTransactions = Collections.synchronizedSet(new HashSet<Transaction>());
+    private final TransactionPool pendingTransactions = new TransactionPool(CONFIG.txPoolSize());
 
     
-    private EthereumListener listener;
+    private final EthereumListenerBus listenerBus = new EthereumListenerBus(CONFIG.listenerQueueSize());
     
 	private static final class WorldManagerHolder {
 		private static final WorldManager instance = new WorldManager();
@@ -74,7 +76,7 @@ public class WorldManager {
 	}
     
     public void addListener(EthereumListener listener) {
-        this.listener = listener;
+        listenerBus.subscribe(listener);
     }
 
     public void startPeerDiscovery() {
@@ -87,28 +89,33 @@ public class WorldManager {
             peerDiscovery.stop();
     }
 
-    public void addPendingTransactions(Set<Transaction> transactions){
-        logger.info("Pending transaction list added: size: [{}]", transactions.size());
-
-        if (listener != null)
-            listener.onPendingTransactionsReceived(transactions);
-        pendingTransactions.addAll(transactions);
+    /**
+     * @return the transactions not pending yet
+     */
+    public List<Transaction> addPendingTransactions(Set<Transaction> transactions){
+        List<Transaction> added = pendingTransactions.addTransactions(transactions);
+        logger.info("Pending transaction list added: size: [{}], new: [{}]", transactions.size(), added.size());
+
+        EthereumListener listener = getListener();
+        if (listener != null && !added.isEmpty())
+            listener.onPendingTransactionsReceived(new HashSet<>(added));
+        return added;
     }
 
     public void clearPendingTransactions(List<Transaction> recivedTransactions){
-
-        for (Transaction tx : recivedTransactions){
-            logger.info("Clear transaction, hash: [{}]", Hex.toHexString(tx.getHash()));
-            pendingTransactions.remove(tx);
-        }
+        pendingTransactions.removeTransactions(recivedTransactions);
     }
 
     public PeerDiscovery getPeerDiscovery() {
     	return peerDiscovery;
     }
 
+    /**
+     * @return the listeners added, called on a thread of their own,
+     * <code>null</code> if there are none
+     */
     public EthereumListener getListener() {
-        return listener;
+        return listenerBus.hasSubscribers() ? listenerBus : null;
     }
     
     public void setWallet(Wallet wallet)  {
@@ -140,7 +147,11 @@ public class WorldManager {
     }
 
     public Set<Transaction> getPendingTransactions() {
-    	return pendingTransactions;
+    	return new HashSet<>(pendingTransactions.getAll());
+    }
+
+    public TransactionPool getTransactionPool() {
+        return pendingTransactions;
     }
 
 	public boolean isBlockchainLoading(){
@@ -149,6 +160,8 @@ public class WorldManager {
 
     public void close() {
         stopPeerDiscovery();
+        PeerEventLoopGroup.shutdown();
+        listenerBus.close();
         repository.close();
         blockchain.close();
     }
@@ -0,0 +1,390 @@
+package org.ethereum.net;
+
+import org.ethereum.core.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits the hashes of the blocks to download into ranges and hands them out
+ * to the peers asking for work, so the blocks are downloaded from several peers at a time.
+ * The blocks are passed on to the queue in the order of the hashes, a range
+ * received ahead of its turn waits for the ranges before it.
+ *
+ * A range not received in time, or received in part, is requested again,
+ * from another peer if there is one. A range is never skipped, when none of the peers
+ * has its blocks the download is stalled and the hashes have to be retrieved again.
+ * The peers are scored by the blocks per second they deliver, a slower peer
+ * is asked for fewer blocks at a time.
+ *
+ * A peer may have a few ranges requested at a time, the requests are pipelined,
+ * the blocks received are matched to the range by the first hash.
+ * The blocks are passed to the queue outside the lock of the scheduler,
+ * by one network thread at a time.
+ */
+public class BlockDownloadScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockqueue");
+
+    /* weight of the last delivery in the score of the peer */
+    private static final double SCORE_WEIGHT = 0.3;
+
+    /**
+     * Where the hashes are taken from and the blocks are passed to, see {@link BlockQueue}
+     */
+    public interface Queue {
+
+        /**
+         * @return up to <code>max</code> hashes of the blocks to download, in the order of the blocks
+         */
+        List<byte[]> getHashes(int max);
+
+        void addBlocks(List<Block> blocks);
+    }
+
+    private static class Range {
+        /* position of the first hash since the download started */
+        final long start;
+        final List<byte[]> hashes;
+        /* the peers that didn't deliver it in time, asked again only if nobody else takes it */
+        final Set<String> failedPeers = new HashSet<>();
+        /* the peers that answered without its blocks, never asked again */
+        final Set<String> lackingPeers = new HashSet<>();
+        int attempts;
+        /* when the range was requested or put back */
+        long since;
+        List<Block> blocks;
+
+        Range(long start, List<byte[]> hashes) {
+            this.start = start;
+            this.hashes = hashes;
+        }
+
+        long end() {
+            return start + hashes.size();
+        }
+    }
+
+    private final Queue queue;
+    private final int maxRange;
+    private final int window;
+    private final long timeout;
+
+    /* ranges waiting to be requested again, the first one is needed the soonest */
+    private final TreeMap<Long, Range> pending = new TreeMap<>();
+    private final Map<String, List<Range>> requested = new HashMap<>();
+    private final TreeMap<Long, Range> received = new TreeMap<>();
+    /* blocks of the ranges next in turn, in order, not passed to the queue yet */
+    private final Deque<List<Block>> ready = new ArrayDeque<>();
+    private final AtomicBoolean delivering = new AtomicBoolean();
+
+    /* the peers asking for the blocks */
+    private final Set<String> peers = new HashSet<>();
+
+    /* delivered blocks per second */
+    private final Map<String, Double> scores = new HashMap<>();
+
+    private long nextPosition;
+    private long deliverPosition;
+    private boolean started;
+    private boolean exhausted;
+    private boolean stalled;
+
+    /**
+     * @param queue - the hashes to download and the place for the blocks
+     * @param maxRange - most blocks asked from a peer in a request
+     * @param window - most ranges requested from a peer at a time
+     * @param timeout - milliseconds a peer has to deliver a range
+     */
+    public BlockDownloadScheduler(Queue queue, int maxRange, int window, long timeout) {
+        this.queue = queue;
+        this.maxRange = maxRange;
+        this.window = Math.max(1, window);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start handing out the hashes, once all of them are in the queue
+     */
+    public synchronized void start() {
+        started = true;
+    }
+
+    /**
+     * Forget the ranges handed out, the blocks of them received later are dropped.
+     * Called when the hashes are retrieved again.
+     */
+    public synchronized void reset() {
+        pending.clear();
+        requested.clear();
+        received.clear();
+        ready.clear();
+        nextPosition = deliverPosition = 0;
+        started = exhausted = stalled = false;
+    }
+
+    /**
+     * The hashes of the blocks the peer is asked for next
+     *
+     * @return empty list if the peer has as many ranges requested as the window allows
+     * or there is nothing to download
+     */
+    public List<byte[]> requestRange(String peer) {
+        return requestRange(peer, System.currentTimeMillis());
+    }
+
+    synchronized List<byte[]> requestRange(String peer, long now) {
+        peers.add(peer);
+        checkTimeouts(now);
+        List<Range> ranges = requested.get(peer);
+        if (!started || (ranges != null && ranges.size() >= window))
+            return Collections.emptyList();
+
+        Range range = takePending(peer, now);
+        if (range == null) {
+            List<byte[]> hashes = queue.getHashes(rangeSize(peer));
+            exhausted = hashes.isEmpty();
+            if (exhausted)
+                return Collections.emptyList();
+            range = new Range(nextPosition, hashes);
+            nextPosition = range.end();
+        }
+
+        ++range.attempts;
+        range.since = now;
+        if (ranges == null) {
+            ranges = new ArrayList<>(window);
+            requested.put(peer, ranges);
+        }
+        ranges.add(range);
+        logger.debug("Blocks [{}..{}) requested from peer [{}], attempt [{}]",
+                range.start, range.end(), peer, range.attempts);
+        return range.hashes;
+    }
+
+    /**
+     * The blocks received from the peer for one of the ranges requested,
+     * the blocks that are next in turn are added to the queue.
+     * An empty list is the answer to the oldest range requested.
+     *
+     * @return number of the blocks matching the requested hashes
+     */
+    public int onBlocks(String peer, List<Block> blocks) {
+        return onBlocks(peer, blocks, System.currentTimeMillis());
+    }
+
+    int onBlocks(String peer, List<Block> blocks, long now) {
+        int count;
+        synchronized (this) {
+            Range range = takeRequested(peer, blocks);
+            if (range == null) {
+                logger.debug("Blocks not requested or timed out from peer [{}]", peer);
+                return 0;
+            }
+
+            count = 0;
+            while (count < blocks.size() && count < range.hashes.size()
+                    && Arrays.equals(blocks.get(count).getHash(), range.hashes.get(count)))
+                ++count;
+            score(peer, count * 1000.0 / Math.max(1, now - range.since));
+
+            if (count < range.hashes.size()) {
+                // the peer doesn't have the rest, that is not a failed attempt
+                Range rest = new Range(range.start + count,
+                        new ArrayList<>(range.hashes.subList(count, range.hashes.size())));
+                rest.attempts = range.attempts;
+                rest.failedPeers.addAll(range.failedPeers);
+                rest.lackingPeers.addAll(range.lackingPeers);
+                rest.lackingPeers.add(peer);
+                rest.since = now;
+                pending.put(rest.start, rest);
+                checkStalled();
+            }
+            if (count > 0) {
+                Range done = new Range(range.start, range.hashes.subList(0, count));
+                done.blocks = new ArrayList<>(blocks.subList(0, count));
+                received.put(done.start, done);
+            }
+            takeReady();
+        }
+
+        deliver();
+        return count;
+    }
+
+    /**
+     * The peer is gone, its range is requested from the others
+     */
+    public synchronized void removePeer(String peer) {
+        peers.remove(peer);
+        scores.remove(peer);
+        List<Range> ranges = requested.remove(peer);
+        if (ranges != null)
+            for (Range range : ranges)
+                putBack(range, peer, System.currentTimeMillis());
+        checkStalled();
+    }
+
+    /**
+     * @return <code>true</code> when all the hashes are handed out and all the ranges are delivered
+     */
+    public synchronized boolean isDone() {
+        return started && exhausted && pending.isEmpty() && requested.isEmpty() && received.isEmpty()
+                && ready.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> when none of the peers has the blocks of a range,
+     * the download can't go on until the hashes are retrieved again, see {@link #reset()}
+     */
+    public synchronized boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * @return blocks per second the peer delivers, <code>0</code> for a peer not scored yet
+     */
+    public synchronized double getScore(String peer) {
+        Double score = scores.get(peer);
+        return score == null ? 0 : score;
+    }
+
+    /* the range of the peer the blocks start, the peer doesn't have it any more */
+    private Range takeRequested(String peer, List<Block> blocks) {
+        List<Range> ranges = requested.get(peer);
+        if (ranges == null)
+            return null;
+
+        Range range = null;
+        if (blocks.isEmpty()) {
+            range = ranges.get(0);
+        } else {
+            byte[] first = blocks.get(0).getHash();
+            for (Range r : ranges)
+                if (Arrays.equals(first, r.hashes.get(0))) {
+                    range = r;
+                    break;
+                }
+        }
+
+        if (range != null) {
+            ranges.remove(range);
+            if (ranges.isEmpty())
+                requested.remove(peer);
+        }
+        return range;
+    }
+
+    /* the earliest range the peer didn't fail, or one nobody else took in time, the peer must have it */
+    private Range takePending(String peer, long now) {
+        for (Iterator<Range> it = pending.values().iterator(); it.hasNext(); ) {
+            Range range = it.next();
+            if (range.lackingPeers.contains(peer))
+                continue;
+            if (!range.failedPeers.contains(peer) || now - range.since >= timeout) {
+                it.remove();
+                return range;
+            }
+        }
+        return null;
+    }
+
+    private void checkTimeouts(long now) {
+        for (Iterator<Map.Entry<String, List<Range>>> it = requested.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, List<Range>> entry = it.next();
+            String peer = entry.getKey();
+            for (Iterator<Range> rangeIt = entry.getValue().iterator(); rangeIt.hasNext(); ) {
+                Range range = rangeIt.next();
+                if (now - range.since < timeout)
+                    continue;
+
+                rangeIt.remove();
+                logger.info("Blocks [{}..{}) timed out at peer [{}]", range.start, range.end(), peer);
+                scores.put(peer, getScore(peer) / 2);
+                putBack(range, peer, now);
+            }
+            if (entry.getValue().isEmpty())
+                it.remove();
+        }
+    }
+
+    private void putBack(Range range, String failedPeer, long now) {
+        range.failedPeers.add(failedPeer);
+        range.since = now;
+        pending.put(range.start, range);
+    }
+
+    /* a range is stalled when all the peers answered without its blocks */
+    private void checkStalled() {
+        if (stalled || peers.isEmpty())
+            return;
+        for (Range range : pending.values())
+            if (range.lackingPeers.containsAll(peers)) {
+                logger.warn("Blocks [{}..{}) not found at any peer, the download is stalled", range.start, range.end());
+                stalled = true;
+                return;
+            }
+    }
+
+    private void score(String peer, double blocksPerSecond) {
+        Double score = scores.get(peer);
+        scores.put(peer, score == null ? blocksPerSecond
+                : score * (1 - SCORE_WEIGHT) + blocksPerSecond * SCORE_WEIGHT);
+    }
+
+    /* a peer gets a range in proportion to its score against the best peer */
+    private int rangeSize(String peer) {
+        Double score = scores.get(peer);
+        double best = 0;
+        for (double s : scores.values())
+            best = Math.max(best, s);
+        if (score == null || best == 0)
+            return maxRange;
+        return Math.max(Math.max(1, maxRange / 4), (int) (maxRange * score / best));
+    }
+
+    private void takeReady() {
+        while (!received.isEmpty() && received.firstKey() == deliverPosition) {
+            Range range = received.pollFirstEntry().getValue();
+            deliverPosition = range.end();
+            ready.addLast(range.blocks);
+        }
+    }
+
+    private synchronized List<Block> pollReady() {
+        return ready.pollFirst();
+    }
+
+    private synchronized boolean hasReady() {
+        return !ready.isEmpty();
+    }
+
+    /*
+     * Pass the ready blocks to the queue without holding the lock, the thread that finds
+     * another one delivering leaves its blocks to it, so they are added in order
+     */
+    private void deliver() {
+        while (hasReady() && delivering.compareAndSet(false, true)) {
+            try {
+                List<Block> blocks;
+                while ((blocks = pollReady()) != null)
+                    queue.addBlocks(blocks);
+            } finally {
+                delivering.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.ethereum.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Double ended queue of 32 byte hashes kept back to back in a ring buffer,
+ * instead of an array object per hash.
+ *
+ * The hashes are added and taken at the last end, the hashes at the first end
+ * are the last ones needed. When more than <code>maxInMemory</code> hashes are queued
+ * the half at the first end is moved to a memory-mapped file, and moved back
+ * when the hashes in memory are all taken.
+ *
+ * Not thread safe.
+ */
+public class BlockHashQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockqueue");
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /* hashes in a circular buffer, the first one at the head */
+    private static class Ring {
+
+        final ByteBuffer buffer;
+        final int capacity;
+        int head;
+        int size;
+
+        Ring(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / HASH_LENGTH;
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        void addFirst(byte[] hash) {
+            head = (head + capacity - 1) % capacity;
+            ++size;
+            put(head, hash);
+        }
+
+        void addLast(byte[] hash) {
+            put((head + size) % capacity, hash);
+            ++size;
+        }
+
+        byte[] peekLast() {
+            return get((head + size - 1) % capacity);
+        }
+
+        byte[] removeFirst() {
+            byte[] hash = get(head);
+            head = (head + 1) % capacity;
+            --size;
+            return hash;
+        }
+
+        byte[] removeLast() {
+            byte[] hash = peekLast();
+            --size;
+            return hash;
+        }
+
+        void copyTo(Ring ring) {
+            for (int i = 0; i < size; ++i)
+                ring.addLast(get((head + i) % capacity));
+        }
+
+        private void put(int index, byte[] hash) {
+            buffer.position(index * HASH_LENGTH);
+            buffer.put(hash);
+        }
+
+        private byte[] get(int index) {
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.position(index * HASH_LENGTH);
+            buffer.get(hash);
+            return hash;
+        }
+    }
+
+    private final int maxInMemory;
+    private final File spillDir;
+
+    private Ring memory;
+
+    /* the hashes before the ones in memory, null until the first spill */
+    private Ring spilled;
+    private File spillFile;
+
+    /**
+     * Keeps all the hashes in memory
+     */
+    public BlockHashQueue() {
+        this(-1, null);
+    }
+
+    /**
+     * @param maxInMemory - most hashes kept in memory, <code>-1</code> for no limit
+     * @param spillDir - directory of the file the hashes above the limit are moved to
+     */
+    public BlockHashQueue(int maxInMemory, File spillDir) {
+        this.maxInMemory = maxInMemory < 0 ? -1 : Math.max(2, maxInMemory);
+        this.spillDir = spillDir;
+        int capacity = this.maxInMemory < 0 ? INITIAL_CAPACITY : Math.min(INITIAL_CAPACITY, this.maxInMemory);
+        this.memory = new Ring(ByteBuffer.allocate(capacity * HASH_LENGTH));
+    }
+
+    public void addFirst(byte[] hash) {
+        checkHash(hash);
+        if (!isSpilled())
+            makeRoom();
+
+        if (isSpilled()) {
+            if (!spilled.isFull() || growSpilled(spilled.capacity * 2)) {
+                spilled.addFirst(hash);
+                return;
+            }
+            unspill();
+        }
+        memory.addFirst(hash);
+    }
+
+    public void addLast(byte[] hash) {
+        checkHash(hash);
+        makeRoom();
+        memory.addLast(hash);
+    }
+
+    /**
+     * @return the last hash or <code>null</code> if the queue is empty
+     */
+    public byte[] peekLast() {
+        if (memory.size > 0) return memory.peekLast();
+        if (isSpilled()) return spilled.peekLast();
+        return null;
+    }
+
+    /**
+     * @return the last hash or <code>null</code> if the queue is empty
+     */
+    public byte[] removeLast() {
+        if (memory.size == 0)
+            loadSpilled();
+        return memory.size == 0 ? null : memory.removeLast();
+    }
+
+    public int size() {
+        return memory.size + (spilled == null ? 0 : spilled.size);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return number of the hashes moved to the file
+     */
+    public int spilledSize() {
+        return spilled == null ? 0 : spilled.size;
+    }
+
+    /**
+     * Drop all the hashes and the spill file
+     */
+    public void clear() {
+        memory.head = memory.size = 0;
+        spilled = null;
+        deleteSpillFile();
+    }
+
+    private boolean isSpilled() {
+        return spilled != null && spilled.size > 0;
+    }
+
+    /* the memory is full: grow it while under the limit, otherwise spill the first half */
+    private void makeRoom() {
+        if (!memory.isFull())
+            return;
+
+        if (maxInMemory < 0 || memory.capacity < maxInMemory) {
+            growMemory(maxInMemory < 0 ? memory.capacity * 2 : Math.min(memory.capacity * 2, maxInMemory));
+            return;
+        }
+
+        int moved = memory.size / 2;
+        if (spilled == null || spilled.capacity - spilled.size < moved) {
+            int capacity = Math.max(memory.capacity, spilled == null ? 0 : spilled.capacity * 2);
+            if (!growSpilled(capacity)) {
+                unspill();
+                return;
+            }
+        }
+
+        for (int i = moved; i > 0; --i)
+            spilled.addLast(memory.removeFirst());
+        logger.debug("Block hashes spilled to the file: [{}], in memory: [{}]", spilled.size, memory.size);
+    }
+
+    /* the hashes in memory are taken, move the last half of the memory back from the file */
+    private void loadSpilled() {
+        if (!isSpilled())
+            return;
+        for (int i = Math.min(spilled.size, memory.capacity / 2); i > 0; --i)
+            memory.addFirst(spilled.removeLast());
+    }
+
+    private void growMemory(int capacity) {
+        Ring ring = new Ring(ByteBuffer.allocate(capacity * HASH_LENGTH));
+        memory.copyTo(ring);
+        memory = ring;
+    }
+
+    private boolean growSpilled(int capacity) {
+        Ring ring = mapSpillFile(capacity);
+        if (ring == null)
+            return false;
+        if (spilled != null)
+            spilled.copyTo(ring);
+        spilled = ring;
+        return true;
+    }
+
+    /* the file can't be used, all the hashes are moved back to memory */
+    private void unspill() {
+        int size = size();
+        Ring ring = new Ring(ByteBuffer.allocate(Math.max(memory.capacity, size) * 2 * HASH_LENGTH));
+        if (spilled != null)
+            spilled.copyTo(ring);
+        memory.copyTo(ring);
+        memory = ring;
+        spilled = null;
+        deleteSpillFile();
+    }
+
+    /* a new file replaces the previous one, a mapping lives until it is collected */
+    private Ring mapSpillFile(int capacity) {
+        File file = null;
+        try {
+            file = File.createTempFile("hashes", ".tmp", spillDir);
+            file.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                ByteBuffer buffer = raf.getChannel()
+                        .map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * HASH_LENGTH);
+                deleteSpillFile();
+                spillFile = file;
+                return new Ring(buffer);
+            }
+        } catch (IOException e) {
+            logger.error("Block hashes can't be spilled to a file: {}", e.getMessage());
+            if (file != null && !file.delete())
+                logger.debug("Can't delete the file: [{}]", file);
+            return null;
+        }
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile != null && !spillFile.delete())
+            logger.debug("Can't delete the file: [{}]", spillFile);
+        spillFile = null;
+    }
+
+    private static void checkHash(byte[] hash) {
+        if (hash == null || hash.length != HASH_LENGTH)
+            throw new IllegalArgumentException("Not a block hash: " + (hash == null ? null : hash.length + " bytes"));
+    }
+}
@@ -3,14 +3,20 @@ package org.ethereum.net;
 import static org.ethereum.config.SystemProperties.CONFIG;
 
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockImportPipeline;
 import org.ethereum.manager.WorldManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The processing queue for blocks to be validated and added to the blockchain.
@@ -20,45 +26,158 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * @author Roman Mandeleil 
  * Created on: 27/07/2014 11:28
  */
-public class BlockQueue {
+public class BlockQueue implements BlockDownloadScheduler.Queue {
 
 	private static final Logger logger = LoggerFactory.getLogger("blockqueue");
 
 	/** The list of hashes of the heaviest chain on the network, 
-	 * for which this client doesn't have the blocks yet */
-	private Deque<byte[]> blockHashQueue = new ArrayDeque<>();
+	 * for which this client doesn't have the blocks yet,
+	 * the hashes above the limit are kept in a file */
+	private final BlockHashQueue blockHashQueue =
+			new BlockHashQueue(CONFIG.hashQueueMemory(), new File(CONFIG.databaseDir()));
 	
-	/** Queue with blocks to be validated and added to the blockchain */
-	private Queue<Block> blockReceivedQueue = new ConcurrentLinkedQueue<>();
+	/** Number of the blocks taken from the queue by the worker in one go */
+	private static final int BATCH_SIZE = 32;
+
+	/** How often the import rate is measured */
+	private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/** Queue with blocks to be validated and added to the blockchain,
+	 * a network thread adding to it never waits, the download is paused
+	 * when it is full instead, see {@link #isPaused()}. The blocks requested
+	 * before the pause still come, so it may go over the limit by up to
+	 * <tt>peer.request.window * peers * max.blocks.ask</tt> blocks */
+	private final BlockingQueue<Block> blockReceivedQueue = new LinkedBlockingQueue<>();
+
+	/** Blocks added and not passed to the import pipeline yet */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	/** Estimated memory taken by the blocks waiting in the queue */
+	private final AtomicLong queuedBytes = new AtomicLong();
+
+	/** Set when the queue is full, until it drains to the half */
+	private final Flow flow = new Flow(CONFIG.maxBlocksQueued(), CONFIG.maxBlocksQueuedMb() * 1024L * 1024L);
 	
 	/** Highest known total difficulty, representing the heaviest chain on the network */
     private BigInteger highestTotalDifficulty;
     
     /** Last block in the queue to be processed */
-	private Block lastBlock;
+	private volatile Block lastBlock;
+
+	/** Verifies and imports the blocks taken from the queue */
+	private final BlockImportPipeline importPipeline;
+
+	/** Hands out the hashes to the peers and puts the blocks received back in order */
+	private final BlockDownloadScheduler downloadScheduler;
 
-	private Timer timer = new Timer("BlockQueueTimer");
+	private final Thread worker;
 
-	public BlockQueue() {
-		timer.scheduleAtFixedRate(new TimerTask() {
+	/** Blocks imported per second over the last measured interval */
+	private volatile double importRate;
+	private long rateTime = System.nanoTime();
+	private long rateBlocks;
+
+	public BlockQueue(BlockImportPipeline importPipeline) {
+		this.importPipeline = importPipeline;
+		this.downloadScheduler = new BlockDownloadScheduler(this,
+				CONFIG.maxBlocksAsk(), CONFIG.peerRequestWindow(), CONFIG.blockDownloadTimeout());
+		this.worker = new Thread(new Runnable() {
+			@Override
 			public void run() {
-				nudgeQueue();
+				try {
+					while (!Thread.currentThread().isInterrupted())
+						nudgeQueue();
+				} catch (InterruptedException e) {
+					// closed
+				}
 			}
-		}, 10, 10);
+		}, "BlockQueueWorker");
+		this.worker.setDaemon(true);
+		this.worker.start();
 	}
 
 	/**
-	 * Processing the queue adding blocks to the chain.
+	 * Processing the queue moving the blocks into the import pipeline,
+	 * waits for the blocks and for the room in the pipeline.
 	 */
-	private void nudgeQueue() {
-		if (blockReceivedQueue.isEmpty())
+	private void nudgeQueue() throws InterruptedException {
+		Block block = blockReceivedQueue.poll(1, TimeUnit.SECONDS);
+		measureImportRate();
+		updateFlow();
+		if (block == null)
 			return;
-		
-		logger.debug("BlockQueue size: {}", blockReceivedQueue.size());
-		Block block = blockReceivedQueue.poll();
 
-        logger.info("Processing block index: {}", block.getNumber());
-		WorldManager.getInstance().getBlockchain().add(block);
+		List<Block> batch = new ArrayList<>(BATCH_SIZE);
+		batch.add(block);
+		blockReceivedQueue.drainTo(batch, BATCH_SIZE - 1);
+		logger.debug("BlockQueue size: {}, processing: {}", blockReceivedQueue.size(), batch.size());
+
+		for (Block next : batch) {
+			logger.debug("Processing block index: {}", next.getNumber());
+			importPipeline.put(next);
+			queued.decrementAndGet();
+			queuedBytes.addAndGet(-estimateSize(next));
+		}
+		updateFlow();
+	}
+
+	private void updateFlow() {
+		flow.update(size(), queuedBytes.get());
+	}
+
+	/* the encoded block plus about as much again for the copies its parsed fields keep */
+	static long estimateSize(Block block) {
+		return 2L * block.getEncoded().length;
+	}
+
+	/**
+	 * Pauses the download when the queue is full by count or by size and resumes
+	 * it when both are down to the half, so the requests don't flap at the limit
+	 */
+	static class Flow {
+
+		private final int maxBlocks;
+		private final long maxBytes;
+		private volatile boolean paused;
+
+		Flow(int maxBlocks, long maxBytes) {
+			this.maxBlocks = maxBlocks;
+			this.maxBytes = maxBytes;
+		}
+
+		/**
+		 * @param count - blocks in the queue
+		 * @param bytes - estimated memory taken by them
+		 * @return <code>true</code> while the download is paused
+		 */
+		synchronized boolean update(int count, long bytes) {
+			if (!paused && (count >= maxBlocks || bytes >= maxBytes)) {
+				paused = true;
+				logger.info("Block queue full: [{}] blocks, [{}] bytes, blocks download paused", count, bytes);
+			} else if (paused && count <= maxBlocks / 2 && bytes <= maxBytes / 2) {
+				paused = false;
+				logger.info("Block queue drained: [{}] blocks, [{}] bytes, blocks download resumed", count, bytes);
+			}
+			return paused;
+		}
+
+		boolean isPaused() {
+			return paused;
+		}
+	}
+
+	private void measureImportRate() {
+		long now = System.nanoTime();
+		if (now - rateTime < RATE_INTERVAL)
+			return;
+
+		long blocks = importPipeline.getStoreMetrics().getBlocks();
+		importRate = (blocks - rateBlocks) * 1e9 / (now - rateTime);
+		rateTime = now;
+		rateBlocks = blocks;
+
+		if (importRate > 0)
+			logger.info("Block queue depth: [{}], import rate: [{}] blocks/s", size(), String.format("%.1f", importRate));
 	}
 
 	/**
@@ -66,13 +185,23 @@ public class BlockQueue {
 	 * The list is validated by making sure the first block in the received list of blocks
 	 * is the next expected block number of the queue.
 	 * 
-	 * The queue is configured to contain a maximum number of blocks to avoid memory issues
-	 * If the list exceeds that, the rest of the received blocks in the list are discarded.
+	 * The queue is configured to contain a maximum number and size of blocks to avoid memory issues.
+	 * When it is full the blocks download is paused, see {@link #isPaused()}.
 	 * 
 	 * @param blockList - the blocks received from a peer to be added to the queue
 	 */
+	@Override
 	public void addBlocks(List<Block> blockList) {
 
+		// once the hashes are retrieved again the blocks queued already come once more
+		long lastNumber = getLastBlock().getNumber();
+		int skipped = 0;
+		while (skipped < blockList.size() && blockList.get(skipped).getNumber() <= lastNumber)
+			++skipped;
+		if (skipped == blockList.size())
+			return;
+		blockList = blockList.subList(skipped, blockList.size());
+
 		Block lastReceivedBlock = blockList.get(0);
 		if (lastReceivedBlock.getNumber() != getLastBlock().getNumber() + 1){
             logger.error("Block download out of sync: lastBlock.index: [{}], receivedBlock.index: [{}]",
@@ -80,8 +209,9 @@ public class BlockQueue {
             return;
         }
 
-        blockReceivedQueue.addAll(blockList);
         lastBlock = blockList.get(blockList.size() - 1);
+        for (Block block : blockList)
+            enqueue(block);
 
 		logger.debug("Blocks waiting to be proceed:  queue.size: [{}] lastBlock.number: [{}]" ,
 				blockReceivedQueue.size(),
@@ -101,37 +231,57 @@ public class BlockQueue {
             return;
         }
 
-        blockReceivedQueue.add(block);
         lastBlock = block;
+        enqueue(block);
 
         logger.debug("Blocks waiting to be proceed:  queue.size: [{}] lastBlock.number: [{}]" ,
                 blockReceivedQueue.size(),
                 lastBlock.getNumber());
     }
 	
+	/* never blocks, it is called on the event loop of the peer */
+	private void enqueue(Block block) {
+		queued.incrementAndGet();
+		queuedBytes.addAndGet(estimateSize(block));
+		blockReceivedQueue.offer(block);
+		updateFlow();
+	}
+
+	/**
+	 * Returns <code>true</code> while the queue is full and no more blocks
+	 * should be requested, the download is resumed when the queue drains
+	 */
+	public boolean isPaused() {
+		return flow.isPaused();
+	}
+
 	/**
-	 * Returns the last block in the queue. If the queue is empty, 
-	 * this will return the last block added to the blockchain.
+	 * Returns the last block in the queue. If the queue and the import
+	 * pipeline are empty, this will return the last block added to the blockchain.
 	 * 
 	 * @return The last known block this client on the network
 	 * and will never return <code>null</code> as there is 
 	 * always the Genesis block at the start of the chain.
 	 */
 	public Block getLastBlock() {
-		if (blockReceivedQueue.isEmpty())
+		if (size() == 0)
 			return WorldManager.getInstance().getBlockchain().getLastBlock();
 		return lastBlock;
 	}
 
 	/**
 	 * Reset the queue of hashes of blocks to be retrieved
-	 * and add the best hash to the top of the queue
+	 * and add the best hash to the top of the queue,
+	 * the ranges handed out by the download scheduler are dropped
 	 * 
 	 * @param hash - the best hash
 	 */
 	public void setBestHash(byte[] hash) {
-		blockHashQueue.clear();
-		blockHashQueue.addLast(hash);
+		downloadScheduler.reset();
+		synchronized (blockHashQueue) {
+			blockHashQueue.clear();
+			blockHashQueue.addLast(hash);
+		}
 	}
 
 	/**
@@ -141,11 +291,15 @@ public class BlockQueue {
 	 * @return The best hash on the network known to the client
 	 */
 	public byte[] getBestHash() {
-		return blockHashQueue.peekLast();
+		synchronized (blockHashQueue) {
+			return blockHashQueue.peekLast();
+		}
 	}
 
 	public void addHash(byte[] hash) {
-		blockHashQueue.addLast(hash);
+		synchronized (blockHashQueue) {
+			blockHashQueue.addLast(hash);
+		}
 
         if (logger.isTraceEnabled()){
             logger.trace("Adding hash to a hashQueue: [{}]" , Hex.toHexString(hash));
@@ -153,22 +307,33 @@ public class BlockQueue {
 	}
 
     public void addNewBlockHash(byte[] hash){
-        blockHashQueue.addFirst(hash);
+        synchronized (blockHashQueue) {
+            blockHashQueue.addFirst(hash);
+        }
     }
 	
 	/**
-	 * Return a list of hashes from blocks that still need to be downloaded.
+	 * Return a list of hashes from blocks that still need to be downloaded,
+	 * the peers take them through the {@link #getDownloadScheduler() download scheduler}.
 	 * 
+	 * @param max - the most hashes to return
 	 * @return A list of hashes for which blocks need to be retrieved.
 	 */
-	public List<byte[]> getHashes() {
+	@Override
+	public List<byte[]> getHashes(int max) {
 		List<byte[]> hashes = new ArrayList<>();
-		while (!blockHashQueue.isEmpty() && hashes.size() < CONFIG.maxBlocksAsk()) {
+		synchronized (blockHashQueue) {
+			while (!blockHashQueue.isEmpty() && hashes.size() < max) {
 				hashes.add(blockHashQueue.removeLast());
+			}
 		}
 		return hashes;
 	}
 
+	public BlockDownloadScheduler getDownloadScheduler() {
+		return downloadScheduler;
+	}
+
     // a bit ugly but really gives
     // good result
     public void logHashQueueSize(){
@@ -202,19 +367,30 @@ public class BlockQueue {
 
 	/**
 	 * Returns the current number of blocks in the queue
+	 * including the ones in the import pipeline
 	 * 
 	 * @return the current number of blocks in the queue
 	 */
 	public int size() {
-		return blockReceivedQueue.size();
+		return queued.get() + importPipeline.size();
+	}
+
+	/**
+	 * Returns the number of the imported blocks per second
+	 * measured over the last second the queue was active
+	 */
+	public double getImportRate() {
+		return importRate;
 	}
 
 	/**
-	 * Cancel and purge the timer-thread that 
+	 * Stop the worker thread that 
 	 * processes the blocks in the queue
 	 */
 	public void close() {
-		timer.cancel();
-		timer.purge();
+		worker.interrupt();
+		synchronized (blockHashQueue) {
+			blockHashQueue.clear();
+		}
 	}
 }
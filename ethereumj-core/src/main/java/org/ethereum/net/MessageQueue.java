@@ -2,12 +2,16 @@ package org.ethereum.net;
 
 import io.netty.channel.ChannelHandlerContext;
 
+import org.ethereum.net.eth.GetBlocksMessage;
 import org.ethereum.net.message.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.config.SystemProperties.CONFIG;
 
 /**
  *	This class contains the logic for sending messages in a queue
@@ -22,84 +26,177 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  *	The following messages will not be answered:
  *		PONG, PEERS, HELLO, STATUS, TRANSACTIONS, BLOCKS
  *
+ *	The queue is processed on the event loop of the channel, when a message is added
+ *	and when an answer arrives. Up to <code>window</code> messages may wait for
+ *	their answers at a time, an answer is matched to the oldest message waiting
+ *	for that type of answer, the peers answer in order. A message not answered
+ *	in time is sent again and given up after {@link #MAX_RETRIES} retries.
+ *	GET_BLOCKS is never sent again, the blocks are asked from another peer
+ *	by the {@link BlockDownloadScheduler}, it leaves the window when the scheduler
+ *	gives up waiting for the answer.
+ *
  * @author Roman Mandeleil
  */
 public class MessageQueue {
 
 	private static final Logger logger = LoggerFactory.getLogger("net");
 
+	/** Times a message is sent again before it is given up */
+	public static final int MAX_RETRIES = 2;
+
 	private Queue<MessageRoundtrip> messageQueue = new ConcurrentLinkedQueue<>();
+
+	/** Sent messages waiting for the answers, in the order they were sent */
+	private final List<MessageRoundtrip> outstanding = new LinkedList<>();
+	private final int window;
+	private final long blocksTimeout;
+
 	private PeerListener listener;
-	private ChannelHandlerContext ctx = null;
-	private final Timer timer = new Timer("MessageQueue");
+	private volatile ChannelHandlerContext ctx = null;
+	private volatile boolean closed;
+
+	private final Runnable nudgeTask = new Runnable() {
+		public void run() {
+			nudgeQueue();
+		}
+	};
 
 	public MessageQueue(PeerListener listener) {
+		this(listener, CONFIG.peerRequestWindow(), CONFIG.blockDownloadTimeout());
+	}
+
+	/**
+	 * @param window - how many messages may wait for their answers at a time
+	 * @param blocksTimeout - milliseconds GET_BLOCKS waits for the answer in the window
+	 */
+	public MessageQueue(PeerListener listener, int window, long blocksTimeout) {
 		this.listener = listener;
+		this.window = Math.max(1, window);
+		this.blocksTimeout = blocksTimeout;
 	}
 
     public void activate(ChannelHandlerContext ctx){
         this.ctx = ctx;
-        timer.scheduleAtFixedRate(new TimerTask() {
-            public void run() {
-                nudgeQueue();
-            }
-        }, 10, 10);
+        this.closed = false;
+        nudge();
     }
 
 	public void sendMessage(Message msg) {
 		messageQueue.add(new MessageRoundtrip(msg));
+		nudge();
 	}
 
+	/**
+	 * Called on the event loop of the channel for every message received
+	 */
 	public void receivedMessage(Message msg) throws InterruptedException {
 
 		if (listener != null)
 			listener.console("[Recv: " + msg + "]");
 
-		if (messageQueue.peek() != null) {
-			MessageRoundtrip messageRoundtrip = messageQueue.peek();
+		for (Iterator<MessageRoundtrip> it = outstanding.iterator(); it.hasNext(); ) {
+			MessageRoundtrip messageRoundtrip = it.next();
 			Message waitingMessage = messageRoundtrip.getMsg();
 
-			if (waitingMessage.getAnswerMessage() != null
-					&& msg.getClass() == waitingMessage.getAnswerMessage()) {
+			if (msg.getClass() == waitingMessage.getAnswerMessage()) {
 				messageRoundtrip.answer();
+				it.remove();
 				logger.debug("Message round trip covered: [{}] ",
 						messageRoundtrip.getMsg().getClass());
+				nudge();
+				return;
 			}
 		}
 	}
 
-	private void removeAnsweredMessage(MessageRoundtrip messageRoundtrip) {
-		if (messageRoundtrip != null && messageRoundtrip.isAnswered())
-			messageQueue.remove();
+	/**
+	 * @return number of the messages waiting for the answers
+	 */
+	public int getOutstanding() {
+		return outstanding.size();
+	}
+
+	/* the queue is only processed on the event loop, the messages are sent once it is active */
+	private void nudge() {
+		ChannelHandlerContext ctx = this.ctx;
+		if (ctx == null || closed)
+			return;
+		if (ctx.executor().inEventLoop())
+			nudgeQueue();
+		else
+			ctx.executor().execute(nudgeTask);
 	}
 
 	private void nudgeQueue() {
-		// remove last answered message on the queue
-		removeAnsweredMessage(messageQueue.peek());
-		// Now send the next message
-		sendToWire(messageQueue.peek());
+		MessageRoundtrip messageRoundtrip;
+		while (!closed && (messageRoundtrip = messageQueue.peek()) != null) {
+			// the window is full, the rest waits for the answers
+			if (messageRoundtrip.getMsg().getAnswerMessage() != null && outstanding.size() >= window)
+				return;
+			// Now send the next message
+			messageQueue.remove();
+			sendToWire(messageRoundtrip);
+		}
 	}
 
-	private void sendToWire(MessageRoundtrip messageRoundtrip) {
+	private void sendToWire(final MessageRoundtrip messageRoundtrip) {
 
-		if (messageRoundtrip != null && messageRoundtrip.getRetryTimes() == 0) {
-			// TODO: retry logic || messageRoundtrip.hasToRetry()){
+		Message msg = messageRoundtrip.getMsg();
 
-			Message msg = messageRoundtrip.getMsg();
+		ctx.writeAndFlush(msg);
 
-			ctx.writeAndFlush(msg);
+		if (msg.getAnswerMessage() != null) {
+			if (messageRoundtrip.getRetryTimes() == 0)
+				outstanding.add(messageRoundtrip);
+			messageRoundtrip.incRetryTimes();
+			messageRoundtrip.saveTime();
+			messageRoundtrip.setTimeout(ctx.executor().schedule(new Runnable() {
+				public void run() {
+					answerTimedOut(messageRoundtrip);
+				}
+			}, isBlocksRequest(msg) ? blocksTimeout : MessageRoundtrip.ANSWER_TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+	}
 
-			if (msg.getAnswerMessage() == null)
-				messageQueue.remove();
-			else {
-				messageRoundtrip.incRetryTimes();
-				messageRoundtrip.saveTime();
-			}
+	/* the blocks requests are retried by the download scheduler, not by the queue */
+	private static boolean isBlocksRequest(Message msg) {
+		return msg instanceof GetBlocksMessage;
+	}
+
+	private void answerTimedOut(MessageRoundtrip messageRoundtrip) {
+		if (closed || messageRoundtrip.isAnswered())
+			return;
+
+		if (isBlocksRequest(messageRoundtrip.getMsg())) {
+			logger.debug("Blocks not sent in time, left to the download scheduler");
+			outstanding.remove(messageRoundtrip);
+			nudgeQueue();
+		} else if (messageRoundtrip.getRetryTimes() > MAX_RETRIES) {
+			logger.info("Message not answered, given up: [{}]", messageRoundtrip.getMsg().getClass());
+			outstanding.remove(messageRoundtrip);
+			nudgeQueue();
+		} else {
+			logger.debug("Message not answered, sent again: [{}]", messageRoundtrip.getMsg().getClass());
+			sendToWire(messageRoundtrip);
 		}
 	}
 
     public void close(){
-        timer.cancel();
-        timer.purge();
+        closed = true;
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null)
+            return;
+        // the timeouts are touched on the event loop only, unless it is gone
+        Runnable cancelTimeouts = new Runnable() {
+            public void run() {
+                for (MessageRoundtrip messageRoundtrip : outstanding)
+                    messageRoundtrip.cancelTimeout();
+                outstanding.clear();
+            }
+        };
+        if (ctx.executor().inEventLoop() || ctx.executor().isShuttingDown())
+            cancelTimeouts.run();
+        else
+            ctx.executor().execute(cancelTimeouts);
     }
 }
@@ -2,20 +2,28 @@ package org.ethereum.net;
 
 import org.ethereum.net.message.Message;
 
+import java.util.concurrent.ScheduledFuture;
+
 /**
  * Utility wraps around a message to keep track of the number of times it has
  * been offered This class also contains the last time a message was offered and
  * is updated when an answer has been received to it can be removed from the
  * queue.
+ * The message is sent again if the answer doesn't come in time, but for GET_BLOCKS,
+ * see {@link MessageQueue}.
  * 
  * @author Roman Mandeleil
  */
 public class MessageRoundtrip {
 
+	/** Milliseconds to wait for the answer before the message is sent again */
+	public static final long ANSWER_TIMEOUT = 20000;
+
 	private Message msg = null;
 	long lastTimestamp = 0;
 	long retryTimes = 0;
 	boolean answered = false;
+	private ScheduledFuture<?> timeout;
 
 	public MessageRoundtrip(Message msg) {
 		this.msg = msg;
@@ -28,6 +36,21 @@ public class MessageRoundtrip {
 
 	public void answer() {
 		answered = true;
+		cancelTimeout();
+	}
+
+	/**
+	 * @param timeout - the task run if the answer doesn't come in time
+	 */
+	public void setTimeout(ScheduledFuture<?> timeout) {
+		cancelTimeout();
+		this.timeout = timeout;
+	}
+
+	public void cancelTimeout() {
+		if (timeout != null)
+			timeout.cancel(false);
+		timeout = null;
 	}
 
 	public long getRetryTimes() {
@@ -43,7 +66,7 @@ public class MessageRoundtrip {
 	}
 
 	public boolean hasToRetry() {
-		return 20000 < System.currentTimeMillis() - lastTimestamp;
+		return ANSWER_TIMEOUT < System.currentTimeMillis() - lastTimestamp;
 	}
 
 	public Message getMsg() {
@@ -0,0 +1,112 @@
+package org.ethereum.net;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.ethereum.config.SystemProperties.CONFIG;
+
+/**
+ * The event loop threads shared by all the peer connections, the outgoing ones
+ * and the ones accepted by the server, so the number of the threads
+ * doesn't grow with the number of the peers.
+ *
+ * The native epoll transport is used on Linux when it is available, NIO otherwise.
+ * The channels take the buffers from the pooled allocator and size
+ * the receive buffers by the amount of data read.
+ */
+public class PeerEventLoopGroup {
+
+    private static final Logger logger = LoggerFactory.getLogger("net");
+
+    /* receive buffer sizes, the adaptive allocator grows and shrinks between them */
+    private static final int MIN_RECEIVE_BUFFER = 64;
+    private static final int INITIAL_RECEIVE_BUFFER = 2048;
+    private static final int MAX_RECEIVE_BUFFER = 65536;
+
+    private static final boolean EPOLL = Epoll.isAvailable();
+
+    private static EventLoopGroup group;
+
+    private PeerEventLoopGroup() {
+    }
+
+    /**
+     * @return the shared group, created on the first call
+     */
+    public static synchronized EventLoopGroup get() {
+        if (group == null || group.isShuttingDown()) {
+            int threads = CONFIG.peerEventLoopThreads();
+            if (threads <= 0)
+                threads = Runtime.getRuntime().availableProcessors();
+            group = newGroup(threads, "PeerEventLoop");
+            logger.info("Peer event loop: [{}] threads, transport: [{}]", threads, EPOLL ? "epoll" : "nio");
+        }
+        return group;
+    }
+
+    /**
+     * A group of its own for the server to accept the connections on
+     */
+    public static EventLoopGroup newAcceptorGroup() {
+        return newGroup(1, "PeerAcceptor");
+    }
+
+    public static Class<? extends SocketChannel> socketChannel() {
+        return EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerSocketChannel> serverSocketChannel() {
+        return EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * Set the pooled allocator and the adaptive receive buffers
+     * for the channels of the bootstrap
+     */
+    public static void configure(AbstractBootstrap<?, ?> bootstrap) {
+        AdaptiveRecvByteBufAllocator receiveBuffers = new AdaptiveRecvByteBufAllocator(
+                MIN_RECEIVE_BUFFER, INITIAL_RECEIVE_BUFFER, MAX_RECEIVE_BUFFER);
+
+        if (bootstrap instanceof ServerBootstrap) {
+            ServerBootstrap serverBootstrap = (ServerBootstrap) bootstrap;
+            serverBootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+            serverBootstrap.childOption(ChannelOption.RCVBUF_ALLOCATOR, receiveBuffers);
+        } else {
+            bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, receiveBuffers);
+        }
+    }
+
+    /**
+     * Stop the shared threads, the channels left are closed
+     */
+    public static synchronized void shutdown() {
+        if (group != null)
+            group.shutdownGracefully();
+        group = null;
+    }
+
+    private static EventLoopGroup newGroup(int threads, String name) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        return EPOLL ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+}
@@ -2,11 +2,11 @@ package org.ethereum.net.client;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 
 import org.ethereum.net.MessageQueue;
+import org.ethereum.net.PeerEventLoopGroup;
 import org.ethereum.net.PeerListener;
 import org.ethereum.net.eth.EthHandler;
 import org.ethereum.net.eth.StatusMessage;
@@ -56,8 +56,6 @@ public class PeerClient {
 
     public void connect(String host, int port) {
 
-    	EventLoopGroup workerGroup = new NioEventLoopGroup();
-
         if (peerListener != null)
         	peerListener.console("Connecting to: " + host + ":" + port);
 
@@ -68,18 +66,20 @@ public class PeerClient {
         shhHandler = new ShhHandler(msgQueue, peerListener);
 
         try {
+            // the event loop threads are shared with the other peers
             Bootstrap b = new Bootstrap();
-            b.group(workerGroup);
-            b.channel(NioSocketChannel.class);
+            b.group(PeerEventLoopGroup.get());
+            b.channel(PeerEventLoopGroup.socketChannel());
+            PeerEventLoopGroup.configure(b);
             
             b.option(ChannelOption.SO_KEEPALIVE, true);
             b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
             b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONFIG.peerConnectionTimeout());
             b.remoteAddress(host, port);
             
-            b.handler(new ChannelInitializer<NioSocketChannel>() {
+            b.handler(new ChannelInitializer<SocketChannel>() {
                 @Override
-                public void initChannel(NioSocketChannel ch) throws Exception {
+                public void initChannel(SocketChannel ch) throws Exception {
 					ch.pipeline().addLast("readTimeoutHandler",
 							new ReadTimeoutHandler(CONFIG.peerChannelReadTimeout(), TimeUnit.SECONDS));
 					ch.pipeline().addLast("out encoder", new MessageEncoder());
@@ -88,8 +88,7 @@ public class PeerClient {
 					ch.pipeline().addLast(Capability.ETH, ethHandler);
 					ch.pipeline().addLast(Capability.SHH, shhHandler);
 
-                    // limit the size of receiving buffer to 1024
-                    ch.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(32368));
+                    // limit the size of the socket receive buffer
                     ch.config().setOption(ChannelOption.SO_RCVBUF, 32368);
                 }
             });
@@ -105,8 +104,6 @@ public class PeerClient {
         	logger.debug("Exception: {} ({})", e.getMessage(), e.getClass().getName());
             throw new Error("Disconnnected");
         } finally {
-        	workerGroup.shutdownGracefully();
-
         	p2pHandler.killTimers();
 
 /*
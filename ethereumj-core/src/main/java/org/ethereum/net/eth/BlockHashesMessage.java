@@ -6,9 +6,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.ethereum.net.eth.EthMessage;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Utils;
 
 /**
@@ -31,24 +30,31 @@ public class BlockHashesMessage extends EthMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-		blockHashes = new ArrayList<>();
+		blockHashes = new ArrayList<>(paramsList.size());
 		for (int i = 1; i < paramsList.size(); ++i) {
-			RLPItem rlpData = ((RLPItem) paramsList.get(i));
-			blockHashes.add(rlpData.getRLPData());
+			blockHashes.add(paramsList.get(i).getBytes());
 		}
 		parsed = true;
 	}
 
 	private void encode() {
-		List<byte[]> encodedElements = new ArrayList<>();
-		encodedElements.add(RLP.encodeByte(BLOCK_HASHES.asByte()));
+		RLPWriter writer = new RLPWriter();
+		encodeTo(writer);
+		this.encoded = writer.toByteArray();
+	}
+
+	@Override
+	public void encodeTo(RLPWriter writer) {
+		if (encoded != null) {
+			writer.writeEncoded(encoded);
+			return;
+		}
+		writer.startList().writeByte(BLOCK_HASHES.asByte());
 		for (byte[] blockHash : blockHashes)
-			encodedElements.add(RLP.encodeElement(blockHash));
-		byte[][] encodedElementArray = encodedElements
-				.toArray(new byte[encodedElements.size()][]);
-		this.encoded = RLP.encodeList(encodedElementArray);
+			writer.writeElement(blockHash);
+		writer.endList();
 	}
 
 
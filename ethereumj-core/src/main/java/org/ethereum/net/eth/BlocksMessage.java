@@ -2,11 +2,10 @@ package org.ethereum.net.eth;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 import org.ethereum.core.Block;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 
 import static org.ethereum.net.eth.EthMessageCodes.BLOCKS;
 
@@ -29,30 +28,32 @@ public class BlocksMessage extends EthMessage {
     }
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-		blocks = new ArrayList<>();
+		blocks = new ArrayList<>(paramsList.size());
 		for (int i = 1; i < paramsList.size(); ++i) {
-			RLPList rlpData = ((RLPList) paramsList.get(i));
-			Block blockData = new Block(rlpData.getRLPData());
+			Block blockData = new Block(paramsList.get(i).getEncoded());
 			blocks.add(blockData);
 		}
 		parsed = true;
 	}
 
     private void encode() {
+        RLPWriter writer = new RLPWriter();
+        encodeTo(writer);
+        this.encoded = writer.toByteArray();
+    }
 
-        List<byte[]> encodedElements = new Vector<>();
-        encodedElements.add(RLP.encodeByte(BLOCKS.asByte()));
-
-        for (Block block : blocks){
-            encodedElements.add(block.getEncoded());
+    @Override
+    public void encodeTo(RLPWriter writer) {
+        if (encoded != null) {
+            writer.writeEncoded(encoded);
+            return;
         }
-
-        byte[][] encodedElementArray = encodedElements
-                .toArray(new byte[encodedElements.size()][]);
-
-        this.encoded = RLP.encodeList(encodedElementArray);
+        writer.startList().writeByte(BLOCKS.asByte());
+        for (Block block : blocks)
+            writer.writeEncoded(block.getEncoded());
+        writer.endList();
     }
 
 
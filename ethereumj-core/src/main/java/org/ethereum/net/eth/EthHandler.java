@@ -6,6 +6,7 @@ import org.ethereum.core.Block;
 import org.ethereum.core.Transaction;
 import org.ethereum.facade.Blockchain;
 import org.ethereum.manager.WorldManager;
+import org.ethereum.net.BlockDownloadScheduler;
 import org.ethereum.net.BlockQueue;
 import org.ethereum.net.MessageQueue;
 import org.ethereum.net.PeerListener;
@@ -18,6 +19,8 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.ethereum.config.SystemProperties.CONFIG;
 import static org.ethereum.net.message.StaticMessages.GET_TRANSACTIONS_MESSAGE;
@@ -55,8 +58,10 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
 
     private boolean peerDiscoveryMode = false;
 
-    private Timer getBlocksTimer = new Timer("GetBlocksTimer");
-    private Timer getTxTimer = new Timer("GetTransactionsTimer");
+    /* the requests are scheduled on the event loop of the channel */
+    private ChannelHandlerContext ctx;
+    private ScheduledFuture<?> getBlocksTask;
+    private ScheduledFuture<?> getTxTask;
 
     public EthHandler(MessageQueue msgQueue, PeerListener peerListener, boolean peerDiscoveryMode) {
     	this.peerListener = peerListener;
@@ -127,10 +132,11 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
 
     private void processTransactions(TransactionsMessage msg) {
 
+        // the transactions already pending are not passed on again
         Set<Transaction> txSet = msg.getTransactions();
-        WorldManager.getInstance().addPendingTransactions(txSet);
+        List<Transaction> added = WorldManager.getInstance().addPendingTransactions(txSet);
 
-        for (Transaction tx : txSet){
+        for (Transaction tx : added){
             WorldManager.getInstance().getWallet().addTransaction(tx);
         }
     }
@@ -142,11 +148,18 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
         ctx.close();
     }
 
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
     @Override
     public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
         logger.debug("handlerRemoved: kill timers in EthHandler");
         active = false;
         this.killTimers();
+        if (peerId != null)
+            WorldManager.getInstance().getBlockchain().getQueue().getDownloadScheduler().removePeer(peerId);
     }
 
     /**
@@ -155,6 +168,7 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
      *   <li>checking if peer is using the same genesis, protocol and network</li>
      *   <li>seeing if total difficulty is higher than total difficulty from all other peers</li>
      * 	 <li>send GET_BLOCK_HASHES to this peer based on bestHash</li>
+     * 	 <li>or join the blocks download if another peer retrieves the hashes of the same chain</li>
      * </ul>
      *
      * @param msg is the StatusMessage
@@ -184,7 +198,15 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
             BlockQueue chainQueue = blockchain.getQueue();
             BigInteger peerTotalDifficulty = new BigInteger(1, msg.getTotalDifficulty());
             BigInteger highestKnownTotalDifficulty = blockchain.getTotalDifficulty();
-            if (highestKnownTotalDifficulty == null
+            BigInteger highestNetworkTotalDifficulty = chainQueue.getHighestTotalDifficulty();
+            if (highestKnownTotalDifficulty != null
+                    && peerTotalDifficulty.compareTo(highestKnownTotalDifficulty) > 0
+                    && highestNetworkTotalDifficulty != null
+                    && peerTotalDifficulty.compareTo(highestNetworkTotalDifficulty) <= 0) {
+                // the hashes are retrieved from another peer, help with the blocks
+                logger.info("Peer [{}] joins the blocks download", peerId);
+                startGetBlockTimer();
+            } else if (highestKnownTotalDifficulty == null
                     || peerTotalDifficulty.compareTo(highestKnownTotalDifficulty) > 0) {
                 hashRetrievalLock = this.peerId;
                 chainQueue.setHighestTotalDifficulty(peerTotalDifficulty);
@@ -235,19 +257,27 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
     private void processBlocks(BlocksMessage blocksMessage) {
         Blockchain blockchain = WorldManager.getInstance().getBlockchain();
         List<Block> blockList = blocksMessage.getBlocks();
+        BlockDownloadScheduler scheduler = blockchain.getQueue().getDownloadScheduler();
 
-        if (blockList.isEmpty()) return;
-        blockchain.getQueue().addBlocks(blockList);
+        // the blocks missing in the response are asked from the other peers
+        scheduler.onBlocks(peerId, blockList);
         blockchain.getQueue().logHashQueueSize();
 
-        // If we got less blocks then we could get,
-        // it the correct indication that we are in sync we
-        // the chain from here there will be NEW_BLOCK only
+        if (scheduler.isStalled()) {
+            retrieveHashesAgain();
+            return;
+        }
+
+        // When all the hashes are downloaded
+        // we are in sync with the chain, from
+        // here there will be NEW_BLOCK only
         // message expectation
-        if (blockList.size() < CONFIG.maxBlocksAsk()) {
+        if (scheduler.isDone()) {
             logger.info(" *** The chain sync process fully complete ***");
             syncStatus = SyncSatus.SYNC_DONE;
             stopGetBlocksTimer();
+        } else if (!blockchain.getQueue().isPaused()) {
+            sendGetBlocks(); // keep the peer busy, don't wait for the timer
         }
     }
 
@@ -324,21 +354,46 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
         msgQueue.sendMessage(msg);
     }
 
-    // Parallel download blocks based on hashQueue
+    // Parallel download blocks based on hashQueue, a range of it per peer
     private void sendGetBlocks() {
         Blockchain blockchain = WorldManager.getInstance().getBlockchain();
         BlockQueue queue = blockchain.getQueue();
-        if (queue.size() > CONFIG.maxBlocksQueued()) return;
+        if (queue.isPaused()) return;
 
-        // retrieve list of block hashes from queue
-        List<byte[]> hashes = queue.getHashes();
+        // retrieve list of block hashes from queue,
+        // as many requests as the peer's window takes
+        BlockDownloadScheduler scheduler = queue.getDownloadScheduler();
+        List<byte[]> hashes = scheduler.requestRange(peerId);
         if (hashes.isEmpty()) {
-            stopGetBlocksTimer();
+            // waiting for the hashes or for the blocks asked already
+            if (scheduler.isStalled()) {
+                retrieveHashesAgain();
+            } else if (scheduler.isDone()) {
+                syncStatus = SyncSatus.SYNC_DONE;
+                stopGetBlocksTimer();
+            }
             return;
         }
 
-        GetBlocksMessage msg = new GetBlocksMessage(hashes);
-        msgQueue.sendMessage(msg);
+        while (!hashes.isEmpty()) {
+            GetBlocksMessage msg = new GetBlocksMessage(hashes);
+            msgQueue.sendMessage(msg);
+            hashes = scheduler.requestRange(peerId);
+        }
+    }
+
+    /*
+     * None of the peers has the blocks of some hashes, the download starts over
+     * with the hashes of this peer's chain, the blocks queued already are kept
+     */
+    private void retrieveHashesAgain() {
+        logger.warn("Blocks download stalled, retrieve the hashes again from peer [{}]", peerId);
+        stopGetBlocksTimer();
+        hashRetrievalLock = this.peerId;
+        BlockQueue queue = WorldManager.getInstance().getBlockchain().getQueue();
+        queue.setBestHash(handshakeStatusMessage.getBestHash());
+        syncStatus = SyncSatus.HASH_RETRIEVING;
+        sendGetBlockHashes();
     }
 
     private void sendPendingTransactions() {
@@ -374,36 +429,41 @@ public class EthHandler extends SimpleChannelInboundHandler<EthMessage> {
 
 
     private void startTxTimer() {
-        getTxTimer.scheduleAtFixedRate(new TimerTask() {
+        getTxTask = ctx.executor().scheduleAtFixedRate(new Runnable() {
             public void run() {
                 sendGetTransactions();
             }
-        }, 2000, 10000);
+        }, 2000, 10000, TimeUnit.MILLISECONDS);
     }
 
     public void startGetBlockTimer() {
+        // all the hashes are retrieved, the blocks can be handed out
+        if (this.peerId.equals(hashRetrievalLock))
+            WorldManager.getInstance().getBlockchain().getQueue().getDownloadScheduler().start();
+
         syncStatus = SyncSatus.BLOCK_RETRIEVING;
-        getBlocksTimer = new Timer("GetBlocksTimer");
-        getBlocksTimer.scheduleAtFixedRate(new TimerTask() {
+        stopGetBlocksTimer();
+        getBlocksTask = ctx.executor().scheduleAtFixedRate(new Runnable() {
             public void run() {
+                // paused while the queue is full, resumed once it drains
                 BlockQueue blockQueue = WorldManager.getInstance().getBlockchain().getQueue();
-                if (blockQueue.size() > CONFIG.maxBlocksQueued()) {
-                    logger.info("Blocks queue too big temporary postpone blocks request");
+                if (blockQueue.isPaused()) {
+                    logger.debug("Blocks queue too big temporary postpone blocks request");
                     return;
                 }
                 sendGetBlocks();
             }
-        }, 1000, 300);
+        }, 1000, 300, TimeUnit.MILLISECONDS);
     }
 
     private void stopGetBlocksTimer() {
-        getBlocksTimer.cancel();
-        getBlocksTimer.purge();
+        if (getBlocksTask != null)
+            getBlocksTask.cancel(false);
     }
 
     private void stopGetTxTimer() {
-        getTxTimer.cancel();
-        getTxTimer.purge();
+        if (getTxTask != null)
+            getTxTask.cancel(false);
     }
 
     public void killTimers() {
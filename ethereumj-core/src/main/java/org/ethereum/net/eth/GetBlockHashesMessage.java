@@ -4,7 +4,7 @@ import static org.ethereum.net.eth.EthMessageCodes.GET_BLOCK_HASHES;
 
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
 import org.spongycastle.util.encoders.Hex;
 
 /**
@@ -40,11 +40,10 @@ public class GetBlockHashesMessage extends EthMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-		this.bestHash = paramsList.get(1).getRLPData();
-		byte[] maxBlocksBytes = paramsList.get(2).getRLPData();
-		this.maxBlocks = ByteUtil.byteArrayToInt(maxBlocksBytes);
+		this.bestHash = paramsList.get(1).getBytes();
+		this.maxBlocks = ByteUtil.byteArrayToInt(paramsList.get(2).getBytes());
 
 		parsed = true;
 	}
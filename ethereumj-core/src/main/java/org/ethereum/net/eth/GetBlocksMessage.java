@@ -3,9 +3,8 @@ package org.ethereum.net.eth;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Utils;
 
 import static org.ethereum.net.eth.EthMessageCodes.GET_BLOCKS;
@@ -30,23 +29,31 @@ public class GetBlocksMessage extends EthMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-		blockHashes = new ArrayList<>();
+		blockHashes = new ArrayList<>(paramsList.size());
 		for (int i = 1; i < paramsList.size(); ++i) {
-			blockHashes.add(((RLPItem) paramsList.get(i)).getRLPData());
+			blockHashes.add(paramsList.get(i).getBytes());
 		}
 		parsed = true;
 	}
 
 	private void encode() {
-		List<byte[]> encodedElements = new ArrayList<>();
-		encodedElements.add(RLP.encodeByte(GET_BLOCKS.asByte()));
+		RLPWriter writer = new RLPWriter();
+		encodeTo(writer);
+		this.encoded = writer.toByteArray();
+	}
+
+	@Override
+	public void encodeTo(RLPWriter writer) {
+		if (encoded != null) {
+			writer.writeEncoded(encoded);
+			return;
+		}
+		writer.startList().writeByte(GET_BLOCKS.asByte());
 		for (byte[] hash : blockHashes)
-			encodedElements.add(RLP.encodeElement(hash));
-		byte[][] encodedElementArray = encodedElements
-				.toArray(new byte[encodedElements.size()][]);
-		this.encoded = RLP.encodeList(encodedElementArray);
+			writer.writeElement(hash);
+		writer.endList();
 	}
 
 	@Override
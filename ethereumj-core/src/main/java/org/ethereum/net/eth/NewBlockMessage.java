@@ -1,8 +1,7 @@
 package org.ethereum.net.eth;
 
 import org.ethereum.core.Block;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
 
 /**
  * Wrapper around an Ethereum Blocks message on the network
@@ -19,11 +18,10 @@ public class NewBlockMessage extends EthMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-        RLPList blockRLP = ((RLPList) paramsList.get(1));
-        block = new Block(blockRLP.getRLPData());
-        difficulty =  paramsList.get(2).getRLPData();
+        block = new Block(paramsList.get(1).getEncoded());
+        difficulty =  paramsList.get(2).getBytes();
 
         parsed = true;
 	}
@@ -4,12 +4,10 @@ import static org.ethereum.net.eth.EthMessageCodes.TRANSACTIONS;
 
 import org.ethereum.core.Transaction;
 import org.ethereum.net.eth.EthMessage;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -38,25 +36,32 @@ public class TransactionsMessage extends EthMessage {
     }
     
     private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
 		transactions = new HashSet<>();
         for (int i = 1; i < paramsList.size(); ++i) {
-            RLPList rlpTxData = (RLPList) paramsList.get(i);
-            Transaction tx = new Transaction(rlpTxData.getRLPData());
+            Transaction tx = new Transaction(paramsList.get(i).getEncoded());
             transactions.add(tx);
         }
         parsed = true;
     }
     
     private void encode() {
-    	List<byte[]> encodedElements = new ArrayList<>();
-    	encodedElements.add(RLP.encodeByte(TRANSACTIONS.asByte()));
-    	for (Transaction tx : transactions)
-            encodedElements.add(tx.getEncoded());
-		byte[][] encodedElementArray = encodedElements
-				.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        RLPWriter writer = new RLPWriter();
+        encodeTo(writer);
+        this.encoded = writer.toByteArray();
+    }
+
+    @Override
+    public void encodeTo(RLPWriter writer) {
+        if (encoded != null) {
+            writer.writeEncoded(encoded);
+            return;
+        }
+        writer.startList().writeByte(TRANSACTIONS.asByte());
+        for (Transaction tx : transactions)
+            writer.writeEncoded(tx.getEncoded());
+        writer.endList();
     }
     
     @Override
@@ -1,5 +1,7 @@
 package org.ethereum.net.message;
 
+import org.ethereum.util.RLPWriter;
+
 /**
  * Abstract message class for all messages on the Ethereum network
  * 
@@ -25,6 +27,15 @@ public abstract class Message {
      * @return RLP encoded byte array representation of this message
      */
 	public abstract byte[] getEncoded();
+
+    /**
+     * Writes the RLP encoded message as a part of the output, by default
+     * the array of {@link #getEncoded()} is written. Messages made of large
+     * parts override it, so the parts are written straight to the output.
+     */
+    public void encodeTo(RLPWriter writer) {
+        writer.writeEncoded(getEncoded());
+    }
 	
 	public abstract Class<?> getAnswerMessage();
 	
@@ -3,8 +3,7 @@ package org.ethereum.net.p2p;
 import org.ethereum.net.message.ReasonCode;
 import org.ethereum.net.p2p.P2pMessage;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
 
 import static org.ethereum.net.p2p.P2pMessageCodes.DISCONNECT;
 import static org.ethereum.net.message.ReasonCode.REQUESTED;
@@ -28,9 +27,9 @@ public class DisconnectMessage extends P2pMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
-		byte[] reasonBytes = ((RLPItem) paramsList.get(1)).getRLPData();
+		byte[] reasonBytes = paramsList.get(1).getBytes();
 		if (reasonBytes == null)
 			this.reason = REQUESTED;
 		else
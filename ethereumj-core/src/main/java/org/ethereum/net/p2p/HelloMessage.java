@@ -47,35 +47,34 @@ public class HelloMessage extends P2pMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 		// TODO: find out if it can be 0x00. Do we need to check for this?
 		// The message does not distinguish between 0 and null,
 		// so we check command code for null.
 
-		byte[] p2pVersionBytes = ((RLPItem) paramsList.get(1)).getRLPData();
-		this.p2pVersion = p2pVersionBytes != null ? p2pVersionBytes[0] : 0;
+		this.p2pVersion = paramsList.get(1).getByte();
 
-		byte[] clientIdBytes = ((RLPItem) paramsList.get(2)).getRLPData();
+		byte[] clientIdBytes = paramsList.get(2).getBytes();
 		this.clientId = new String(clientIdBytes != null ? clientIdBytes : EMPTY_BYTE_ARRAY);
 
-		RLPList capabilityList = (RLPList) paramsList.get(3);
+		RLPView capabilityList = paramsList.get(3);
 		this.capabilities = new ArrayList<>();
 		for (int i = 0; i < capabilityList.size(); i++) {
 
-            RLPElement capId = ((RLPList)capabilityList.get(i)).get(0);
-            RLPElement capVersion = ((RLPList)capabilityList.get(i)).get(1);
+            RLPView capId = capabilityList.get(i).get(0);
+            RLPView capVersion = capabilityList.get(i).get(1);
             
-            String name = new String(capId.getRLPData());
-            byte version = capVersion.getRLPData() == null ? 0 : capVersion.getRLPData()[0];
+            String name = new String(capId.getBytes());
+            byte version = capVersion.getByte();
             
             Capability cap = new Capability(name, version);
 			this.capabilities.add(cap);
 		}
 
-		byte[] peerPortBytes = ((RLPItem) paramsList.get(4)).getRLPData();
+		byte[] peerPortBytes = paramsList.get(4).getBytes();
 		this.listenPort = ByteUtil.byteArrayToInt(peerPortBytes);
 
-		byte[] peerIdBytes = ((RLPItem) paramsList.get(5)).getRLPData();
+		byte[] peerIdBytes = paramsList.get(5).getBytes();
 		this.peerId = Hex.toHexString(peerIdBytes);
 		this.parsed = true;
 	}
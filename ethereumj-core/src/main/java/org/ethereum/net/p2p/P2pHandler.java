@@ -7,6 +7,8 @@ import static org.ethereum.net.message.StaticMessages.HELLO_MESSAGE;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -45,7 +47,7 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
 	
 	private final static Logger logger = LoggerFactory.getLogger("net");
 
-	private final Timer timer = new Timer("MessageTimer");
+	private ScheduledFuture<?> pingTask;
 
 	private PeerListener peerListener;
 	
@@ -72,7 +74,7 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
         msgQueue.activate(ctx);
 		// Send HELLO once when channel connection has been established
 		msgQueue.sendMessage(HELLO_MESSAGE);
-		startTimers();
+		startTimers(ctx);
 	}
 
     public void activate(){
@@ -248,15 +250,15 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
         return handshakeHelloMessage;
     }
 
-    private void startTimers() {
-        // sample for pinging in background
+    private void startTimers(ChannelHandlerContext ctx) {
+        // sample for pinging in background, on the event loop of the channel
 
-        timer.scheduleAtFixedRate(new TimerTask() {
+        pingTask = ctx.executor().scheduleAtFixedRate(new Runnable() {
             public void run() {
-                if (tearDown) cancel();
+                if (tearDown) pingTask.cancel(false);
                 msgQueue.sendMessage(PING_MESSAGE);
             }
-        }, 2000, 5000);
+        }, 2000, 5000, TimeUnit.MILLISECONDS);
 
 /*
         timer.scheduleAtFixedRate(new TimerTask() {
@@ -268,8 +270,8 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
     }
 	
     public void killTimers(){
-        timer.cancel();
-        timer.purge();
+        if (pingTask != null)
+            pingTask.cancel(false);
         msgQueue.close();
 
     }
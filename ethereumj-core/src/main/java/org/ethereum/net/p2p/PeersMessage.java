@@ -11,7 +11,7 @@ import org.ethereum.net.p2p.P2pMessage;
 import org.ethereum.net.p2p.Peer;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
 import org.spongycastle.util.encoders.Hex;
 
 /**
@@ -35,14 +35,14 @@ public class PeersMessage extends P2pMessage {
 	}
 
 	private void parse() {
-		RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+		RLPView paramsList = RLPView.wrap(encoded);
 
 		peers = new LinkedHashSet<>();
 		for (int i = 1; i < paramsList.size(); ++i) {
-			RLPList peerParams = (RLPList) paramsList.get(i);
-			byte[] ipBytes = peerParams.get(0).getRLPData();
-			byte[] portBytes = peerParams.get(1).getRLPData();
-			byte[] peerIdRaw = peerParams.get(2).getRLPData();
+			RLPView peerParams = paramsList.get(i);
+			byte[] ipBytes = peerParams.get(0).getBytes();
+			byte[] portBytes = peerParams.get(1).getBytes();
+			byte[] peerIdRaw = peerParams.get(2).getBytes();
 
 			try {
 				int peerPort = ByteUtil.byteArrayToInt(portBytes);
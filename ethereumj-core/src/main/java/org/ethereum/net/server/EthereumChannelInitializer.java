@@ -2,8 +2,7 @@ package org.ethereum.net.server;
 
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.FixedRecvByteBufAllocator;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.ethereum.net.MessageQueue;
 import org.ethereum.net.client.Capability;
@@ -26,7 +25,7 @@ import static org.ethereum.config.SystemProperties.CONFIG;
  * Created on: 01/11/2014 10:58
  */
 
-public class EthereumChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+public class EthereumChannelInitializer extends ChannelInitializer<SocketChannel> {
 
     private static final Logger logger = LoggerFactory.getLogger("net");
     private PeerServer peerServer;
@@ -35,7 +34,7 @@ public class EthereumChannelInitializer extends ChannelInitializer<NioSocketChan
         this.peerServer = peerServer;
     }
 
-    public void initChannel(NioSocketChannel ch) throws Exception {
+    public void initChannel(SocketChannel ch) throws Exception {
 
         MessageQueue msgQueue;
         P2pHandler p2pHandler;
@@ -63,8 +62,8 @@ public class EthereumChannelInitializer extends ChannelInitializer<NioSocketChan
         ch.pipeline().addLast(Capability.ETH, ethHandler);
         ch.pipeline().addLast(Capability.SHH, shhHandler);
 
-        // limit the size of receiving buffer to 1024
-        ch.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(32368));
+        // limit the size of the socket receive buffer,
+        // the read buffers are set up by the server bootstrap
         ch.config().setOption(ChannelOption.SO_RCVBUF, 32368);
 
         peerServer.addChannel(new Channel(msgQueue, p2pHandler, ethHandler, shhHandler));
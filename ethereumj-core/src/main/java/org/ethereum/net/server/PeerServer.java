@@ -5,9 +5,8 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LoggingHandler;
+import org.ethereum.net.PeerEventLoopGroup;
 import org.ethereum.net.PeerListener;
 import org.ethereum.net.p2p.HelloMessage;
 import org.slf4j.Logger;
@@ -65,8 +64,9 @@ public class PeerServer {
         }, 2000, 5000);
 
 
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        // the accepted connections run on the threads shared with the outgoing ones
+        EventLoopGroup bossGroup = PeerEventLoopGroup.newAcceptorGroup();
+        EventLoopGroup workerGroup = PeerEventLoopGroup.get();
 
         if (peerListener != null)
         	peerListener.console("Listening on port " + port);
@@ -76,7 +76,8 @@ public class PeerServer {
             ServerBootstrap b = new ServerBootstrap();
 
             b.group(bossGroup, workerGroup);
-            b.channel(NioServerSocketChannel.class);
+            b.channel(PeerEventLoopGroup.serverSocketChannel());
+            PeerEventLoopGroup.configure(b);
             
             b.option(ChannelOption.SO_KEEPALIVE, true);
             b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
@@ -97,8 +98,7 @@ public class PeerServer {
         	logger.debug("Exception: {} ({})", e.getMessage(), e.getClass().getName());
             throw new Error("Server Disconnnected");
         } finally {
-        	workerGroup.shutdownGracefully();
-
+        	bossGroup.shutdownGracefully();
         }
     }
 
@@ -12,72 +12,164 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * The PacketDecoder parses every valid Ethereum packet to a Message object
+ * The PacketDecoder parses every valid Ethereum packet to a Message object.
+ *
+ * A packet is the sync token, the length of the message and the message.
+ * Once the header is read the message is copied straight from the received
+ * buffers into an array, which the message is parsed from, so a large message
+ * is not gathered in the cumulation buffer first. The array grows with the bytes
+ * received up to the size of the message, a header alone doesn't take the memory.
+ *
+ * Bytes not starting with the sync token are skipped up to the next sync token.
+ * The peer is dropped when that happens too often between two messages,
+ * more bytes than the largest message are skipped or a message is too large.
  */
 public class MessageDecoder extends ByteToMessageDecoder {
 
     private static final Logger loggerWire = LoggerFactory.getLogger("wire");
     private static final Logger loggerNet = LoggerFactory.getLogger("net");
 
-	@Override
-	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+    private static final int SYNC_TOKEN = 0x22400891;
+    private static final int HEADER_SIZE = 8;
 
-		if (!isValidEthereumPacket(in)) {
-			return;
-		}
+    /** Largest message accepted from a peer */
+    public static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
 
-		byte[] encoded = new byte[in.readInt()];
-		in.readBytes(encoded);
-	
-		if (loggerWire.isDebugEnabled())
-			loggerWire.debug("Encoded: [{}]", Hex.toHexString(encoded));
+    /** Times the sync token may be searched for between two messages before the peer is dropped */
+    public static final int MAX_RESYNCS = 3;
 
-		Message msg = MessageFactory.createMessage(encoded);
+    /* the array of a message starts that big at most */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
 
-		if (loggerNet.isInfoEnabled())
-            loggerNet.info("From: \t{} \tRecv: \t{}", ctx.channel().remoteAddress(), msg);
+    /* the message being received, its size and how much of it is here */
+    private byte[] encoded;
+    private int msgSize;
+    private int received;
 
-		out.add(msg);
-        in.markReaderIndex();
+    private int resyncs;
+    /* searching for the sync token, maybe over several reads, and the bytes skipped so far */
+    private boolean resyncing;
+    private long skipped;
 
-        EthereumListener ethereumListener = WorldManager.getInstance().getListener();
-        if (ethereumListener != null) {
-            ethereumListener.onRecvMessage(msg);
-        }
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+
+		while (in.isReadable()) {
+			if (encoded == null && !readHeader(ctx, in))
+				return;
+
+			int length = Math.min(in.readableBytes(), msgSize - received);
+			ensureCapacity(received + length);
+			in.readBytes(encoded, received, length);
+			received += length;
+
+			// Don't have the full message yet
+			if (received < msgSize) {
+				loggerWire.trace("msg decode: readBytes: [{}] / msgSize: [{}] ", received, msgSize);
+				return;
+			}
+
+			byte[] msgEncoded = encoded;
+			encoded = null;
+			out.add(parse(ctx, msgEncoded));
+			resyncs = 0;
+		}
     }
-	
-	private boolean isValidEthereumPacket(ByteBuf in) {
+
+	/* doubles the array up to the size of the message */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= encoded.length)
+			return;
+		int grown = (int) Math.min(msgSize, Math.max(capacity, 2L * encoded.length));
+		encoded = Arrays.copyOf(encoded, grown);
+	}
+
+	/* the sync token and the message length, false if the header is not here yet or the peer is dropped */
+	private boolean readHeader(ChannelHandlerContext ctx, ByteBuf in) {
 		// Ethereum message is at least 8 bytes
-		if (in.readableBytes() < 8)
+		if (in.readableBytes() < HEADER_SIZE)
+			return false;
+
+		if (in.getInt(in.readerIndex()) != SYNC_TOKEN && !resync(ctx, in))
+			return false;
+		resyncing = false;
+		skipped = 0;
+		if (in.readableBytes() < HEADER_SIZE)
 			return false;
 
-		long syncToken = in.readUnsignedInt();
+		int msgSize = in.getInt(in.readerIndex() + 4);
+		if (msgSize < 0 || msgSize > MAX_MESSAGE_SIZE) {
+			loggerNet.warn("Message too large: [{}] bytes, drop the peer: {}", msgSize & 0xFFFFFFFFL,
+					ctx.channel().remoteAddress());
+			drop(ctx, in);
+			return false;
+		}
 
-        if (!((syncToken >> 24   &  0xFF) == 0x22  &&
-              (syncToken >> 16   &  0xFF) == 0x40  &&
-              (syncToken >>  8   &  0xFF) == 0x08  &&
-              (syncToken         &  0xFF) == 0x91 )) {
+		in.skipBytes(HEADER_SIZE);
+		this.msgSize = msgSize;
+		encoded = new byte[Math.min(msgSize, INITIAL_CAPACITY)];
+		received = 0;
+		return true;
+	}
 
-			// TODO: Drop frame and continue.
-			// A collision can happen (although rare)
+	/*
+	 * skip the garbage up to the next sync token, a collision can happen (although rare),
+	 * the garbage split over several reads is counted once
+	 */
+	private boolean resync(ChannelHandlerContext ctx, ByteBuf in) {
+		if (!resyncing && ++resyncs > MAX_RESYNCS) {
 			// If this happens too often, it's an attack.
-			// In that case, drop the peer.
-			loggerWire.error("Abandon garbage, wrong sync token: [{}]", syncToken);
+			loggerNet.warn("Wrong sync token too often, drop the peer: {}", ctx.channel().remoteAddress());
+			drop(ctx, in);
+			return false;
+		}
+		resyncing = true;
+
+		int start = in.readerIndex();
+		int last = in.writerIndex() - 4;
+		for (int i = start + 1; i <= last; ++i) {
+			if (in.getInt(i) == SYNC_TOKEN) {
+				loggerWire.error("Abandon garbage, wrong sync token: [{}] bytes skipped", skipped + i - start);
+				in.readerIndex(i);
+				return true;
+			}
 		}
 
-		// Don't have the full message yet
-        long msgSize = in.getInt(in.readerIndex());
-		if (msgSize > in.readableBytes()) {
-			loggerWire.trace("msg decode: magicBytes: [{}], readBytes: [{}] / msgSize: [{}] ",
-                    syncToken, in.readableBytes(), msgSize);
-			in.resetReaderIndex();
+		// the token may start in the last bytes
+		skipped += last + 1 - start;
+		if (skipped > MAX_MESSAGE_SIZE) {
+			loggerNet.warn("No sync token in [{}] bytes, drop the peer: {}", skipped, ctx.channel().remoteAddress());
+			drop(ctx, in);
 			return false;
 		}
+		loggerWire.debug("Wrong sync token, [{}] bytes skipped", skipped);
+		in.readerIndex(Math.max(start, last + 1));
+		return false;
+	}
 
-		loggerWire.trace("Message fully constructed: readBytes: [{}] / msgSize: [{}]", in.readableBytes(), msgSize);
-		return true;
+	private void drop(ChannelHandlerContext ctx, ByteBuf in) {
+		in.skipBytes(in.readableBytes());
+		encoded = null;
+		ctx.close();
+	}
+
+	private Message parse(ChannelHandlerContext ctx, byte[] msgEncoded) {
+		if (loggerWire.isDebugEnabled())
+			loggerWire.debug("Encoded: [{}]", Hex.toHexString(msgEncoded));
+
+		Message msg = MessageFactory.createMessage(msgEncoded);
+
+		if (loggerNet.isInfoEnabled())
+            loggerNet.info("From: \t{} \tRecv: \t{}", ctx.channel().remoteAddress(), msg);
+
+        EthereumListener ethereumListener = WorldManager.getInstance().getListener();
+        if (ethereumListener != null) {
+            ethereumListener.onRecvMessage(msg);
+        }
+		return msg;
 	}
-}
\ No newline at end of file
+}
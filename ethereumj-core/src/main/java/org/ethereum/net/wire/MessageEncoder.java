@@ -8,7 +8,7 @@ import org.ethereum.listener.EthereumListener;
 import org.ethereum.manager.WorldManager;
 import org.ethereum.net.message.Message;
 import org.ethereum.net.message.StaticMessages;
-import org.ethereum.util.ByteUtil;
+import org.ethereum.util.RLPWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -28,15 +28,18 @@ public class MessageEncoder extends MessageToByteEncoder<Message> {
 		if (loggerNet.isInfoEnabled())
             loggerNet.info("To: \t{} \tSend: \t{}", ctx.channel().remoteAddress(), msg);
 
-		byte[] encoded = msg.getEncoded();
-		
 		if (loggerWire.isDebugEnabled())
-			loggerWire.debug("Encoded: [{}]", Hex.toHexString(encoded));
-		
-		out.capacity(encoded.length + 8);
+			loggerWire.debug("Encoded: [{}]", Hex.toHexString(msg.getEncoded()));
+
+		// the message is written straight to the buffer, the size is known up front
+		RLPWriter writer = new RLPWriter();
+		msg.encodeTo(writer);
+		int size = writer.size();
+
+		out.ensureWritable(size + 8);
         out.writeBytes(StaticMessages.SYNC_TOKEN);
-        out.writeBytes(ByteUtil.calcPacketLength(encoded));
-        out.writeBytes(encoded);
+        out.writeInt(size);
+        writer.writeTo(out);
 
         EthereumListener ethereumListener = WorldManager.getInstance().getListener();
         if (ethereumListener != null) {
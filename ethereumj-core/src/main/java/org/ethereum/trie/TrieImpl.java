@@ -502,7 +502,46 @@ public class TrieImpl implements Trie {
         return root + traceAction.getOutput();
     }
 
+    /**
+     * Visit every key and value stored in the trie, in the order of the keys
+     */
+    public void scanLeaves(LeafAction leafAction) {
+        scanLeaves(this.root, new byte[0], leafAction);
+    }
+
+    private void scanLeaves(Object node, byte[] path, LeafAction leafAction) {
+        if (isEmptyNode(node)) return;
+        Value currentNode = this.getNode(node);
+        if (currentNode == null) return;
+
+        if (currentNode.length() == PAIR_SIZE) {
+            byte[] k = unpackToNibbles(currentNode.get(0).asBytes());
+            byte[] nibbles = concatenate(path, k);
+            if (k.length > 0 && k[k.length - 1] == 16)
+                leafAction.doOnLeaf(nibblesToBin(nibbles, nibbles.length - 1), currentNode.get(1).asBytes());
+            else
+                scanLeaves(currentNode.get(1).asObj(), nibbles, leafAction);
+        } else {
+            for (byte i = 0; i < 16; ++i)
+                scanLeaves(currentNode.get(i).asObj(), concatenate(path, new byte[]{i}), leafAction);
+            Value value = currentNode.get(16);
+            if (value.length() != 0)
+                leafAction.doOnLeaf(nibblesToBin(path, path.length), value.asBytes());
+        }
+    }
+
+    private static byte[] nibblesToBin(byte[] nibbles, int length) {
+        byte[] bin = new byte[length / 2];
+        for (int i = 0; i < bin.length; ++i)
+            bin[i] = (byte) (nibbles[2 * i] << 4 | nibbles[2 * i + 1]);
+        return bin;
+    }
+
     public interface ScanAction {
         public void doOnNode(byte[] hash, Value node);
     }
+
+    public interface LeafAction {
+        public void doOnLeaf(byte[] key, byte[] value);
+    }
 }
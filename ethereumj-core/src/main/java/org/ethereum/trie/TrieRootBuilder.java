@@ -0,0 +1,242 @@
+package org.ethereum.trie;
+
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLP;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes the root hash of a trie built from scratch, the same hash as
+ * {@link TrieImpl#getRootHash()} after the same updates.
+ *
+ * The items are added in the ascending order of their keys. The order tells
+ * when a subtree is complete: the branches under construction are kept on a stack
+ * and a node is encoded, and hashed if needed, as soon as no later key can
+ * end up under it. No node is cached or looked up, only the encoded references
+ * of the children of the open branches are kept.
+ *
+ * <pre>
+ *     byte[] root = new TrieRootBuilder()
+ *         .add(key1, value1)
+ *         .add(key2, value2)
+ *         .getRootHash();
+ * </pre>
+ *
+ * Not thread safe.
+ */
+public class TrieRootBuilder {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+
+    private static final int TERMINATOR = 16;
+    private static final int BRANCH_SIZE = 17;
+    private static final byte[] EMPTY_ITEM = {(byte) OFFSET_SHORT_ITEM};
+
+    private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] key1, byte[] key2) {
+            return FastByteComparisons.compareTo(key1, 0, key1.length, key2, 0, key2.length);
+        }
+    };
+
+    /* an open branch: the nibble position where its keys differ and the references of its children */
+    private static class Branch {
+        final int depth;
+        final int prevCommon;
+        final byte[] key;
+        final byte[][] children = new byte[BRANCH_SIZE][];
+
+        Branch(int depth, int prevCommon, byte[] key) {
+            this.depth = depth;
+            this.prevCommon = prevCommon;
+            this.key = key;
+        }
+    }
+
+    private Branch[] stack = new Branch[8];
+    private int stackSize;
+
+    /* the last item is processed when the next key is known */
+    private byte[] lastKey;
+    private byte[] lastValue;
+    private int lastCommon = -1;
+
+    private byte[] root;
+    private boolean done;
+
+    /**
+     * Root hash of the trie with the given items, the items don't need to be sorted
+     */
+    public static byte[] getRootHash(List<byte[]> keys, List<byte[]> values) {
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+
+        final byte[][] sortKeys = keys.toArray(new byte[keys.size()][]);
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return KEY_ORDER.compare(sortKeys[i1], sortKeys[i2]);
+            }
+        });
+
+        TrieRootBuilder builder = new TrieRootBuilder();
+        for (int i : order)
+            builder.add(sortKeys[i], values.get(i));
+        return builder.getRootHash();
+    }
+
+    /**
+     * Add the next item, an empty value is skipped the same way as
+     * {@link TrieImpl#update(byte[], byte[])} deletes the key
+     *
+     * @param key - greater than the keys added before
+     */
+    public TrieRootBuilder add(byte[] key, byte[] value) {
+        if (done)
+            throw new IllegalStateException("Root hash calculated already");
+        if (value == null || value.length == 0)
+            return this;
+
+        if (lastKey != null) {
+            if (KEY_ORDER.compare(lastKey, key) >= 0)
+                throw new IllegalArgumentException("Keys out of order");
+            int common = commonNibbles(lastKey, key);
+            addLeaf(lastKey, lastValue, lastCommon, common);
+            lastCommon = common;
+        }
+        lastKey = key;
+        lastValue = value;
+        return this;
+    }
+
+    /**
+     * @return root hash of the added items, empty array when there are none
+     */
+    public byte[] getRootHash() {
+        if (!done) {
+            if (lastKey != null)
+                addLeaf(lastKey, lastValue, lastCommon, -1);
+            lastKey = lastValue = null;
+            done = true;
+        }
+        return root == null ? ByteUtil.EMPTY_BYTE_ARRAY : HashUtil.sha3(root);
+    }
+
+    /*
+     * The leaf hangs from the deeper of the branches it shares with the previous
+     * and with the next key, the branches deeper than the one shared
+     * with the next key are complete then
+     */
+    private void addLeaf(byte[] key, byte[] value, int prevCommon, int nextCommon) {
+        int depth = Math.max(prevCommon, nextCommon);
+        if (depth >= 0 && nibble(key, depth) == TERMINATOR)
+            attach(encodeItem(value), key, depth, prevCommon);
+        else
+            attach(leaf(key, depth + 1, value), key, depth, prevCommon);
+
+        while (stackSize > 0 && stack[stackSize - 1].depth > nextCommon) {
+            Branch branch = stack[--stackSize];
+            stack[stackSize] = null;
+
+            int parentDepth = Math.max(branch.prevCommon, nextCommon);
+            byte[] node = branch(branch);
+            if (branch.depth > parentDepth + 1)
+                node = extension(branch.key, parentDepth + 1, branch.depth, reference(node));
+            attach(node, branch.key, parentDepth, branch.prevCommon);
+        }
+    }
+
+    /* put the node into the branch at the depth, -1 is the root */
+    private void attach(byte[] node, byte[] key, int depth, int prevCommon) {
+        if (depth < 0) {
+            root = node;
+            return;
+        }
+        if (stackSize == 0 || stack[stackSize - 1].depth != depth) {
+            if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+            stack[stackSize++] = new Branch(depth, prevCommon, key);
+        }
+        Branch branch = stack[stackSize - 1];
+        int nibble = nibble(key, depth);
+        branch.children[nibble] = nibble == TERMINATOR ? node : reference(node);
+    }
+
+    /* nodes shorter than a hash are embedded, the others are referenced by the hash */
+    private static byte[] reference(byte[] node) {
+        if (node.length < 32) return node;
+        return encodeItem(HashUtil.sha3(node));
+    }
+
+    private static byte[] leaf(byte[] key, int from, byte[] value) {
+        return encodeList(encodeItem(compact(key, from, key.length * 2, true)), encodeItem(value));
+    }
+
+    private static byte[] extension(byte[] key, int from, int to, byte[] child) {
+        return encodeList(encodeItem(compact(key, from, to, false)), child);
+    }
+
+    private static byte[] branch(Branch branch) {
+        byte[][] items = new byte[BRANCH_SIZE][];
+        for (int i = 0; i < BRANCH_SIZE; ++i)
+            items[i] = branch.children[i] == null ? EMPTY_ITEM : branch.children[i];
+        return encodeList(items);
+    }
+
+    /* hex prefix encoding of the key nibbles, see CompactEncoder#packNibbles() */
+    private static byte[] compact(byte[] key, int from, int to, boolean leaf) {
+        int length = to - from;
+        int odd = length % 2;
+        byte[] packed = new byte[length / 2 + 1];
+        int flags = (leaf ? 2 : 0) + odd;
+
+        int pos = from;
+        packed[0] = (byte) (flags << 4);
+        if (odd == 1)
+            packed[0] |= nibble(key, pos++);
+        for (int i = 1; i < packed.length; ++i, pos += 2)
+            packed[i] = (byte) ((nibble(key, pos) << 4) | nibble(key, pos + 1));
+        return packed;
+    }
+
+    /* the nibbles of the key followed by the terminator */
+    private static int nibble(byte[] key, int index) {
+        if (index == key.length * 2) return TERMINATOR;
+        int b = key[index / 2] & 0xFF;
+        return index % 2 == 0 ? b >> 4 : b & 0x0F;
+    }
+
+    private static int commonNibbles(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length) * 2 + 1;
+        int common = 0;
+        while (common < length && nibble(key1, common) == nibble(key2, common)) ++common;
+        return common;
+    }
+
+    /* same as RLP#encode() the trie nodes are encoded with, a single byte is always itself */
+    private static byte[] encodeItem(byte[] data) {
+        if (data.length == 1) return data;
+        byte[] prefix = RLP.encodeLength(data.length, OFFSET_SHORT_ITEM);
+        byte[] item = Arrays.copyOf(prefix, prefix.length + data.length);
+        System.arraycopy(data, 0, item, prefix.length, data.length);
+        return item;
+    }
+
+    private static byte[] encodeList(byte[]... items) {
+        int length = 0;
+        for (byte[] item : items) length += item.length;
+        byte[] prefix = RLP.encodeLength(length, OFFSET_SHORT_LIST);
+
+        byte[] list = Arrays.copyOf(prefix, prefix.length + length);
+        int pos = prefix.length;
+        for (byte[] item : items) {
+            System.arraycopy(item, 0, list, pos, item.length);
+            pos += item.length;
+        }
+        return list;
+    }
+}
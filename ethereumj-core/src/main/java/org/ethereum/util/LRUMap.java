@@ -1,25 +1,27 @@
-package org.ethereum.util;
-
-import java.util.concurrent.ConcurrentHashMap;
-
-/**
- * Simple LRU map used for reusing lookup values.
- */
-public class LRUMap<K,V> extends ConcurrentHashMap<K,V> {
-
-	private static final long serialVersionUID = 1L;
-
-	protected final int maxEntries;
-    
-    public LRUMap(int initialEntries, int maxEntries) {
-        super(initialEntries, 0.8f, 3);
-        this.maxEntries = maxEntries;
-    }
-
-/* todo: temporary removed during concurrent impl
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
-        return size() > maxEntries;
-    }
-*/
-}
\ No newline at end of file
+package org.ethereum.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simple LRU map used for reusing lookup values.
+ * Holds at most <code>maxEntries</code>, the least recently accessed entry is dropped first.
+ *
+ * Not thread safe, access has to be synchronized by the caller.
+ */
+public class LRUMap<K,V> extends LinkedHashMap<K,V> {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int maxEntries;
+
+    public LRUMap(int initialEntries, int maxEntries) {
+        super(initialEntries, 0.8f, true);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return size() > maxEntries;
+    }
+}
@@ -0,0 +1,197 @@
+package org.ethereum.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Read-only view of an RLP encoded element inside a larger array.
+ *
+ * Unlike {@link RLP#decode2(byte[])} nothing is copied while reading: an element
+ * is just the offset and the length of its bytes in the original array, the items
+ * of a list are located on the first access to the list. An owned array is
+ * created only when the caller asks for one, see {@link #getBytes()} and
+ * {@link #getEncoded()}.
+ *
+ * The view keeps the original array, it must not be changed while the view is used.
+ * Not thread safe.
+ */
+public class RLPView {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private static final int[] NO_ELEMENTS = new int[0];
+
+    private final byte[] data;
+    private final int offset;
+    private final int payloadOffset;
+    private final int payloadLength;
+    private final boolean list;
+
+    /* offsets of the list items, found on the first access */
+    private int[] elements;
+
+    private RLPView(byte[] data, int offset, int limit) {
+        if (offset >= limit)
+            throw new RuntimeException("RLP wrong encoding: no element at " + offset);
+
+        int prefix = data[offset] & 0xFF;
+        int lengthOfLength = 0;
+        int length;
+
+        if (prefix < OFFSET_SHORT_ITEM) {
+            // single byte item, the byte is its own encoding
+            this.list = false;
+            this.payloadOffset = offset;
+            this.payloadLength = 1;
+        } else {
+            if (prefix <= OFFSET_LONG_ITEM) {
+                length = prefix - OFFSET_SHORT_ITEM;
+                this.list = false;
+            } else if (prefix < OFFSET_SHORT_LIST) {
+                lengthOfLength = prefix - OFFSET_LONG_ITEM;
+                length = readLength(data, offset + 1, lengthOfLength, limit);
+                this.list = false;
+            } else if (prefix <= OFFSET_LONG_LIST) {
+                length = prefix - OFFSET_SHORT_LIST;
+                this.list = true;
+            } else {
+                lengthOfLength = prefix - OFFSET_LONG_LIST;
+                length = readLength(data, offset + 1, lengthOfLength, limit);
+                this.list = true;
+            }
+            this.payloadOffset = offset + 1 + lengthOfLength;
+            this.payloadLength = length;
+        }
+
+        if (payloadOffset + payloadLength > limit || payloadOffset + payloadLength < 0)
+            throw new RuntimeException("RLP wrong encoding: element at " + offset + " exceeds its parent");
+
+        this.data = data;
+        this.offset = offset;
+    }
+
+    /**
+     * @return view of the element the array starts with
+     */
+    public static RLPView wrap(byte[] data) {
+        return new RLPView(data, 0, data.length);
+    }
+
+    /**
+     * @return view of the element that starts at <code>offset</code>
+     */
+    public static RLPView wrap(byte[] data, int offset) {
+        return new RLPView(data, offset, data.length);
+    }
+
+    public boolean isList() {
+        return list;
+    }
+
+    /**
+     * @return number of the items of the list
+     */
+    public int size() {
+        return elements().length;
+    }
+
+    /**
+     * @return view of the list item, nothing is copied
+     */
+    public RLPView get(int index) {
+        int[] elements = elements();
+        if (index < 0 || index >= elements.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + elements.length);
+        return new RLPView(data, elements[index], payloadOffset + payloadLength);
+    }
+
+    /**
+     * @return copy of the payload, <code>null</code> for an empty item like {@link RLPItem#getRLPData()}
+     */
+    public byte[] getBytes() {
+        if (payloadLength == 0) return null;
+        return Arrays.copyOfRange(data, payloadOffset, payloadOffset + payloadLength);
+    }
+
+    /**
+     * @return copy of the whole element including its prefix
+     */
+    public byte[] getEncoded() {
+        return Arrays.copyOfRange(data, offset, offset + getEncodedLength());
+    }
+
+    /**
+     * @return first byte of the payload, <code>0</code> for an empty item
+     */
+    public byte getByte() {
+        return payloadLength == 0 ? 0 : data[payloadOffset];
+    }
+
+    /**
+     * The payload as an unsigned big endian number, a longer payload
+     * is truncated to its low 64 bits the same way as {@link BigInteger#longValue()}
+     */
+    public long getLong() {
+        long value = 0;
+        int end = payloadOffset + payloadLength;
+        for (int i = Math.max(payloadOffset, end - 8); i < end; ++i)
+            value = (value << 8) | (data[i] & 0xFF);
+        return value;
+    }
+
+    public BigInteger getBigInteger() {
+        if (payloadLength == 0) return BigInteger.ZERO;
+        return new BigInteger(1, getBytes());
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getEncodedLength() {
+        return payloadOffset - offset + payloadLength;
+    }
+
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    private int[] elements() {
+        if (!list)
+            throw new RuntimeException("RLP wrong encoding: element at " + offset + " is not a list");
+        if (elements != null) return elements;
+
+        int end = payloadOffset + payloadLength;
+        int count = 0;
+        int[] found = payloadLength == 0 ? NO_ELEMENTS : new int[Math.min(payloadLength, 16)];
+        for (int pos = payloadOffset; pos < end; ) {
+            if (count == found.length) found = Arrays.copyOf(found, count * 2);
+            found[count++] = pos;
+            pos += new RLPView(data, pos, end).getEncodedLength();
+        }
+        elements = count == found.length ? found : Arrays.copyOf(found, count);
+        return elements;
+    }
+
+    private static int readLength(byte[] data, int pos, int lengthOfLength, int limit) {
+        if (lengthOfLength > 4 || pos + lengthOfLength > limit)
+            throw new RuntimeException("RLP wrong encoding: bad length at " + (pos - 1));
+        int length = 0;
+        for (int i = 0; i < lengthOfLength; ++i)
+            length = (length << 8) | (data[pos + i] & 0xFF);
+        if (length < 0)
+            throw new RuntimeException("RLP wrong encoding: bad length at " + (pos - 1));
+        return length;
+    }
+}
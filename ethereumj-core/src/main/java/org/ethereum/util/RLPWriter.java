@@ -0,0 +1,273 @@
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+import org.spongycastle.util.BigIntegers;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes a whole RLP structure into a single output without encoding
+ * the nested elements into arrays of their own first.
+ *
+ * The structure is recorded first, the lengths of the lists are known as soon as
+ * they are closed, so the exact size is available before anything is written.
+ * The output is then written in one pass to a <code>byte[]</code>, a {@link ByteBuffer}
+ * or a Netty {@link ByteBuf}. The arrays passed to the writer are referenced,
+ * not copied, they must not change until the output is written.
+ *
+ * <pre>
+ *     byte[] encoded = new RLPWriter()
+ *         .startList()
+ *             .writeElement(hash)
+ *             .writeLong(number)
+ *         .endList()
+ *         .toByteArray();
+ * </pre>
+ *
+ * Not thread safe.
+ */
+public class RLPWriter {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int SIZE_THRESHOLD = 56;
+
+    private static final byte ITEM = 0;
+    private static final byte ENCODED = 1;
+    private static final byte LONG = 2;
+    private static final byte LIST = 3;
+
+    /* the recorded entries: kind, array, offset and length (payload length for the lists) */
+    private byte[] kinds = new byte[16];
+    private byte[][] arrays = new byte[16][];
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private long[] values = new long[16];
+    private int count;
+
+    /* entries and sizes of the lists that are not closed yet */
+    private int[] openLists = new int[8];
+    private int[] openSizes = new int[8];
+    private int depth;
+
+    /* encoded size of everything recorded on the current level */
+    private int size;
+
+    public RLPWriter startList() {
+        if (depth == openLists.length) {
+            openLists = Arrays.copyOf(openLists, depth * 2);
+            openSizes = Arrays.copyOf(openSizes, depth * 2);
+        }
+        openLists[depth] = add(LIST, null, 0, 0, 0);
+        openSizes[depth] = size;
+        ++depth;
+        size = 0;
+        return this;
+    }
+
+    public RLPWriter endList() {
+        if (depth == 0)
+            throw new IllegalStateException("No list to end");
+        --depth;
+        int payload = size;
+        lengths[openLists[depth]] = payload;
+        size = openSizes[depth] + prefixLength(payload) + payload;
+        return this;
+    }
+
+    /**
+     * Same as {@link RLP#encodeElement(byte[])}, <code>null</code> is the empty item
+     */
+    public RLPWriter writeElement(byte[] data) {
+        if (data == null) return writeElement(ByteUtil.EMPTY_BYTE_ARRAY, 0, 0);
+        return writeElement(data, 0, data.length);
+    }
+
+    public RLPWriter writeElement(byte[] data, int offset, int length) {
+        add(ITEM, data, offset, length, 0);
+        size += (length == 1 && (data[offset] & 0xFF) < OFFSET_SHORT_ITEM ? 0 : prefixLength(length)) + length;
+        return this;
+    }
+
+    /**
+     * Writes an element that is RLP encoded already as it is
+     */
+    public RLPWriter writeEncoded(byte[] encoded) {
+        add(ENCODED, encoded, 0, encoded.length, 0);
+        size += encoded.length;
+        return this;
+    }
+
+    /**
+     * Writes a non negative number as a big endian item without the leading zeroes,
+     * zero is the empty item the same way as {@link RLP#encodeBigInteger(BigInteger)}
+     */
+    public RLPWriter writeLong(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value: " + value);
+        int length = (64 - Long.numberOfLeadingZeros(value) + 7) / 8;
+        add(LONG, null, 0, length, value);
+        size += (length == 1 && value < OFFSET_SHORT_ITEM ? 0 : 1) + length;
+        return this;
+    }
+
+    public RLPWriter writeByte(byte value) {
+        return writeLong(value & 0xFF);
+    }
+
+    public RLPWriter writeBigInteger(BigInteger value) {
+        if (value.signum() == 0) return writeLong(0);
+        return writeElement(BigIntegers.asUnsignedByteArray(value));
+    }
+
+    public RLPWriter writeString(String value) {
+        return writeElement(value.getBytes());
+    }
+
+    /**
+     * @return exact length of the output
+     */
+    public int size() {
+        if (depth != 0)
+            throw new IllegalStateException("Lists not ended: " + depth);
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        byte[] out = new byte[size()];
+        writeTo(out, 0);
+        return out;
+    }
+
+    /**
+     * @return the position after the written bytes
+     */
+    public int writeTo(final byte[] out, final int offset) {
+        if (out.length - offset < size())
+            throw new IndexOutOfBoundsException("Output too small: " + (out.length - offset) + " < " + size());
+        ArraySink sink = new ArraySink(out, offset);
+        write(sink);
+        return sink.pos;
+    }
+
+    public void writeTo(final ByteBuffer out) {
+        if (out.remaining() < size())
+            throw new IndexOutOfBoundsException("Output too small: " + out.remaining() + " < " + size());
+        write(new Sink() {
+            @Override
+            public void put(byte b) {
+                out.put(b);
+            }
+
+            @Override
+            public void put(byte[] src, int offset, int length) {
+                out.put(src, offset, length);
+            }
+        });
+    }
+
+    public void writeTo(final ByteBuf out) {
+        out.ensureWritable(size());
+        write(new Sink() {
+            @Override
+            public void put(byte b) {
+                out.writeByte(b);
+            }
+
+            @Override
+            public void put(byte[] src, int offset, int length) {
+                out.writeBytes(src, offset, length);
+            }
+        });
+    }
+
+    private void write(Sink sink) {
+        for (int i = 0; i < count; ++i) {
+            switch (kinds[i]) {
+                case LIST:
+                    writePrefix(sink, lengths[i], OFFSET_SHORT_LIST);
+                    break;
+                case ENCODED:
+                    sink.put(arrays[i], offsets[i], lengths[i]);
+                    break;
+                case ITEM:
+                    if (lengths[i] != 1 || (arrays[i][offsets[i]] & 0xFF) >= OFFSET_SHORT_ITEM)
+                        writePrefix(sink, lengths[i], OFFSET_SHORT_ITEM);
+                    sink.put(arrays[i], offsets[i], lengths[i]);
+                    break;
+                case LONG:
+                    if (lengths[i] != 1 || values[i] >= OFFSET_SHORT_ITEM)
+                        writePrefix(sink, lengths[i], OFFSET_SHORT_ITEM);
+                    for (int shift = (lengths[i] - 1) * 8; shift >= 0; shift -= 8)
+                        sink.put((byte) (values[i] >>> shift));
+                    break;
+            }
+        }
+    }
+
+    private int add(byte kind, byte[] array, int offset, int length, long value) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        kinds[count] = kind;
+        arrays[count] = array;
+        offsets[count] = offset;
+        lengths[count] = length;
+        values[count] = value;
+        return count++;
+    }
+
+    private static int prefixLength(int length) {
+        if (length < SIZE_THRESHOLD) return 1;
+        return 1 + bytesOf(length);
+    }
+
+    private static int bytesOf(int length) {
+        return (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+    }
+
+    private static void writePrefix(Sink sink, int length, int offset) {
+        if (length < SIZE_THRESHOLD) {
+            sink.put((byte) (offset + length));
+            return;
+        }
+        int lengthOfLength = bytesOf(length);
+        sink.put((byte) (offset + SIZE_THRESHOLD - 1 + lengthOfLength));
+        for (int shift = (lengthOfLength - 1) * 8; shift >= 0; shift -= 8)
+            sink.put((byte) (length >>> shift));
+    }
+
+    private interface Sink {
+        void put(byte b);
+
+        void put(byte[] src, int offset, int length);
+    }
+
+    private static class ArraySink implements Sink {
+        private final byte[] out;
+        private int pos;
+
+        ArraySink(byte[] out, int pos) {
+            this.out = out;
+            this.pos = pos;
+        }
+
+        @Override
+        public void put(byte b) {
+            out[pos++] = b;
+        }
+
+        @Override
+        public void put(byte[] src, int offset, int length) {
+            System.arraycopy(src, offset, out, pos, length);
+            pos += length;
+        }
+    }
+}
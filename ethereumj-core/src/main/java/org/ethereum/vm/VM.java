@@ -1,6 +1,6 @@
 package org.ethereum.vm;
 
-import org.ethereum.crypto.HashUtil;
+import org.ethereum.crypto.Keccak256;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.vm.Program.OutOfGasException;
 
@@ -473,7 +473,8 @@ public class VM {
                     DataWord lengthData     = program.stackPop();
                     ByteBuffer buffer = program.memoryChunk(memOffsetData, lengthData);
 
-                    byte[] encoded = HashUtil.sha3(buffer.array());
+                    byte[] encoded = new byte[Keccak256.DIGEST_LENGTH];
+                    Keccak256.digest(buffer, encoded, 0);
                     DataWord word = new DataWord(encoded);
 
                     if (logger.isInfoEnabled())
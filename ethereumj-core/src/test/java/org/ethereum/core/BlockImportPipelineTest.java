@@ -0,0 +1,203 @@
+package org.ethereum.core;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.core.BlockTestData.createChain;
+import static org.junit.Assert.*;
+
+public class BlockImportPipelineTest {
+
+    @Test // blocks are applied and stored in order, verified against the pending parents
+    public void test1() throws Exception {
+        List<Block> chain = createChain(50);
+        ChainStages stages = new ChainStages(chain.get(0), 49);
+        BlockImportPipeline pipeline = new BlockImportPipeline(stages, 4, 8);
+        try {
+            for (int i = 1; i < chain.size(); ) {
+                if (pipeline.offer(chain.get(i))) ++i;
+                else Thread.sleep(1);
+            }
+            assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+
+            assertEquals(chain.subList(1, chain.size()), stages.applied);
+            assertEquals(chain.subList(1, chain.size()), stages.stored);
+            assertEquals(0, stages.wrongParents);
+            assertEquals(0, pipeline.size());
+            assertEquals(49, pipeline.getVerifyMetrics().getBlocks());
+            assertEquals(49, pipeline.getApplyMetrics().getBlocks());
+            assertEquals(49, pipeline.getStoreMetrics().getBlocks());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test // an invalid block is dropped, the blocks after it don't follow the chain any more
+    public void test2() throws Exception {
+        List<Block> chain = createChain(10);
+        ChainStages stages = new ChainStages(chain.get(0), 4);
+        stages.invalid = 5;
+        BlockImportPipeline pipeline = new BlockImportPipeline(stages, 2, 16);
+        try {
+            for (Block block : chain.subList(1, chain.size()))
+                assertTrue(pipeline.offer(block));
+            assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+
+            while (pipeline.size() > 0) Thread.sleep(1);
+            assertEquals(chain.subList(1, 5), stages.stored);
+            assertEquals(9, pipeline.getVerifyMetrics().getBlocks());
+            // the blocks after the invalid one are refused by the apply stage
+            assertEquals(8, pipeline.getApplyMetrics().getBlocks());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test // the queues are bounded, a full pipeline refuses more blocks
+    public void test3() throws Exception {
+        List<Block> chain = createChain(20);
+        ChainStages stages = new ChainStages(chain.get(0), 19);
+        stages.storeGate = new CountDownLatch(1);
+        BlockImportPipeline pipeline = new BlockImportPipeline(stages, 2, 2);
+        try {
+            int offered = 0;
+            long deadline = System.currentTimeMillis() + 500;
+            while (System.currentTimeMillis() < deadline && offered < chain.size() - 1) {
+                if (pipeline.offer(chain.get(offered + 1))) ++offered;
+                else Thread.sleep(1);
+            }
+            // one in the store, two waiting for it, one applied and two verified
+            assertTrue("offered: " + offered, offered <= 6);
+            assertEquals(offered, pipeline.size());
+
+            stages.storeGate.countDown();
+            while (offered < chain.size() - 1) {
+                if (pipeline.offer(chain.get(offered + 1))) ++offered;
+                else Thread.sleep(1);
+            }
+            assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+            assertEquals(chain.subList(1, chain.size()), stages.stored);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test // put waits for the room instead of refusing the block
+    public void test4() throws Exception {
+        List<Block> chain = createChain(30);
+        ChainStages stages = new ChainStages(chain.get(0), 29);
+        BlockImportPipeline pipeline = new BlockImportPipeline(stages, 2, 1);
+        try {
+            for (Block block : chain.subList(1, chain.size()))
+                assertTrue(pipeline.put(block));
+            assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+            assertEquals(chain.subList(1, chain.size()), stages.stored);
+
+            pipeline.close();
+            assertFalse(pipeline.put(chain.get(1)));
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test // a block not stored stops the import, no gap is left in the chain
+    public void test5() throws Exception {
+        List<Block> chain = createChain(10);
+        ChainStages stages = new ChainStages(chain.get(0), 4);
+        stages.unstorable = 5;
+        BlockImportPipeline pipeline = new BlockImportPipeline(stages, 2, 16);
+        try {
+            for (Block block : chain.subList(1, chain.size()))
+                assertTrue(pipeline.offer(block));
+            assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+
+            // the pipeline closes right after the store of block 5 fails
+            long deadline = System.currentTimeMillis() + 1000;
+            while (pipeline.offer(chain.get(1)) && System.currentTimeMillis() < deadline) Thread.sleep(1);
+            assertFalse(pipeline.offer(chain.get(1)));
+            assertEquals(chain.subList(1, 5), stages.stored);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private static class ChainStages implements BlockImportPipeline.Stages {
+
+        final List<Block> applied = new ArrayList<>();
+        final List<Block> stored = Collections.synchronizedList(new ArrayList<Block>());
+        final Random random = new Random(1);
+        final Block genesis;
+
+        volatile int wrongParents;
+        volatile long invalid = -1;
+        volatile long unstorable = -1;
+        volatile CountDownLatch storeGate;
+        final CountDownLatch done;
+        Block last;
+
+        ChainStages(Block genesis, int expected) {
+            this.genesis = genesis;
+            this.last = genesis;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public boolean verify(Block block, Block.HeaderLoader ancestors) {
+            BlockHeader parent = ancestors.loadHeader(block.getParentHash());
+            if (parent == null || !Arrays.equals(parent.getHash(), block.getParentHash()))
+                ++wrongParents;
+            try {
+                Thread.sleep(random.nextInt(3));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return block.getNumber() != invalid;
+        }
+
+        @Override
+        public BigInteger apply(Block block) {
+            if (!Arrays.equals(last.getHash(), block.getParentHash()))
+                return null;
+            last = block;
+            applied.add(block);
+            return BigInteger.valueOf(block.getNumber());
+        }
+
+        @Override
+        public void store(Block block, BigInteger totalDifficulty) {
+            try {
+                CountDownLatch gate = storeGate;
+                if (gate != null) gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertEquals(block.getNumber(), totalDifficulty.longValue());
+            if (block.getNumber() == unstorable)
+                throw new RuntimeException("Disk full");
+            stored.add(block);
+        }
+
+        @Override
+        public void imported(Block block) {
+            done.countDown();
+        }
+
+        @Override
+        public BlockHeader loadHeader(byte[] hash) {
+            if (Arrays.equals(genesis.getHash(), hash)) return genesis.getHeader();
+            synchronized (stored) {
+                for (Block block : stored)
+                    if (Arrays.equals(block.getHash(), hash)) return block.getHeader();
+            }
+            return null;
+        }
+    }
+}
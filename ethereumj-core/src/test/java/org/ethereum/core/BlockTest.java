@@ -4,6 +4,7 @@ import java.math.BigInteger;
 
 import org.ethereum.manager.WorldManager;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.spongycastle.util.encoders.Hex;
@@ -170,4 +171,32 @@ public class BlockTest {
     	// TODO
     	fail("Not yet implemented");
     }
+
+    @Test // hash is computed once and reset by the header changes
+    public void testHashMemoized() {
+        Block block = new Block(Hex.decode(block_32));
+        byte[] hash = block.getHash();
+        assertSame(hash, block.getHash());
+
+        block.setStateRoot(new byte[32]);
+        assertFalse(Hex.toHexString(hash).equals(Hex.toHexString(block.getHash())));
+
+        block.setNonce(new byte[32]);
+        byte[] noncedHash = block.getHash();
+        assertSame(noncedHash, block.getHash());
+    }
+
+    @Test // with assertions on a stale hash would fail right in getHash()
+    public void testHashNotStale() {
+        boolean assertions = false;
+        assert assertions = true;
+        // nothing to check when the tests run without -ea
+        Assume.assumeTrue(assertions);
+
+        BlockHeader header = new Block(Hex.decode(block_17)).getHeader();
+        header.getHash();
+        header.setGasUsed(header.getGasUsed() + 1);
+        header.setExtraData(new byte[]{1});
+        header.getHash();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package org.ethereum.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockTestData {
+
+    /**
+     * Blocks with just the header filled in, numbered from 0 on,
+     * the first one has a zero parent hash and every other one follows the one before
+     */
+    public static List<Block> createChain(int length) {
+        List<Block> chain = new ArrayList<>();
+        byte[] parentHash = new byte[32];
+        for (int i = 0; i < length; ++i) {
+            Block block = new Block(parentHash, null, null, null, i, 0, 0, 0, i * 10, null, null, null, null);
+            chain.add(block);
+            parentHash = block.getHash();
+        }
+        return chain;
+    }
+}
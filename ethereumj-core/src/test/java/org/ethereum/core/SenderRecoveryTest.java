@@ -0,0 +1,55 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.RLP;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.*;
+
+public class SenderRecoveryTest {
+
+    private static final String COW = "cd2a3d9f938e13cd947ec05abc7fe734df8dd826";
+    private static final String CAT = "79b08ad8787060333663d19704909ee7b1903e58";
+
+    @Test // sender is recovered once and kept by the transaction
+    public void test1() {
+
+        Transaction tx = createTx(1, "cow");
+        byte[] sender = tx.getSender();
+
+        assertEquals(COW, Hex.toHexString(sender));
+        assertSame(sender, tx.getSender());
+
+        tx.sign(HashUtil.sha3("cat".getBytes()));
+        assertEquals(CAT, Hex.toHexString(tx.getSender()));
+    }
+
+    @Test // all the senders of the block are ready after the pre-pass, recovered in more than one slice
+    public void test2() {
+
+        byte[][] receipts = new byte[40][];
+        for (int i = 0; i < receipts.length; ++i) {
+            Transaction tx = createTx(i + 1, i % 2 == 0 ? "cow" : "cat");
+            receipts[i] = new TransactionReceipt(tx, new byte[32], new byte[]{1}).getEncoded();
+        }
+
+        Block genesis = Genesis.getInstance();
+        Block block = new Block(RLP.encodeList(genesis.getHeader().getEncoded(),
+                RLP.encodeList(receipts), RLP.encodeList()));
+
+        SenderRecovery.recover(block);
+
+        for (int i = 0; i < receipts.length; ++i) {
+            Transaction tx = block.getTransactionsList().get(i);
+            assertEquals(i % 2 == 0 ? COW : CAT, Hex.toHexString(tx.getSender()));
+        }
+    }
+
+    private Transaction createTx(int nonce, String sender) {
+        Transaction tx = new Transaction(new byte[]{(byte) nonce}, Hex.decode("09184e72a000"),
+                Hex.decode("4255"), Hex.decode(CAT), Hex.decode("0100"), null);
+        tx.sign(HashUtil.sha3(sender.getBytes()));
+        return tx;
+    }
+}
@@ -0,0 +1,91 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.HashUtil;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.ethereum.core.TransactionPool.hashOf;
+import static org.junit.Assert.*;
+
+public class TransactionPoolTest {
+
+    private static final String CAT = "cd2a3d9f938e13cd947ec05abc7fe734df8dd826";
+
+    @Test // a transaction in the pool is not added again, a better paying one replaces its nonce
+    public void test1() {
+        TransactionPool pool = new TransactionPool(10);
+        Transaction tx = createTx(0, 10, "cow");
+
+        assertTrue(pool.addTransaction(tx));
+        assertFalse(pool.addTransaction(tx));
+        assertFalse(pool.addTransaction(createTx(0, 5, "cow")));
+        assertEquals(1, pool.size());
+
+        Transaction better = createTx(0, 20, "cow");
+        assertTrue(pool.addTransaction(better));
+        assertEquals(1, pool.size());
+        assertFalse(pool.contains(hashOf(tx)));
+        assertSame(better, pool.getTransaction(hashOf(better)));
+    }
+
+    @Test // the best paying first, every sender in the order of the nonce
+    public void test2() {
+        TransactionPool pool = new TransactionPool(10);
+        Transaction cow0 = createTx(0, 10, "cow");
+        Transaction cow1 = createTx(1, 30, "cow");
+        Transaction dog0 = createTx(0, 20, "dog");
+        Transaction dog1 = createTx(1, 5, "dog");
+        pool.addTransactions(Arrays.asList(dog1, cow1, dog0, cow0));
+
+        assertEquals(Arrays.asList(dog0, cow0, cow1, dog1), pool.selectTransactions(10));
+        assertEquals(Arrays.asList(dog0, cow0), pool.selectTransactions(2));
+        assertEquals(Arrays.asList(cow0, cow1), pool.getTransactions(cow0.getSender()));
+    }
+
+    @Test // a full pool drops the cheapest last transaction of a sender for a better paying one
+    public void test3() {
+        TransactionPool pool = new TransactionPool(3);
+        Transaction cow0 = createTx(0, 10, "cow");
+        Transaction cow1 = createTx(1, 30, "cow");
+        Transaction dog0 = createTx(0, 20, "dog");
+        pool.addTransactions(Arrays.asList(cow0, cow1, dog0));
+
+        // cow0 is the cheapest but cow1 depends on it
+        assertFalse(pool.addTransaction(createTx(0, 15, "cat")));
+        assertTrue(pool.addTransaction(createTx(0, 25, "cat")));
+        assertEquals(3, pool.size());
+        assertFalse(pool.contains(hashOf(dog0)));
+        assertTrue(pool.contains(hashOf(cow0)));
+    }
+
+    @Test // a block removes the nonces it uses up, whatever transactions of the senders are in the pool
+    public void test4() {
+        TransactionPool pool = new TransactionPool(10);
+        Transaction cow0 = createTx(0, 10, "cow");
+        Transaction cow1 = createTx(1, 10, "cow");
+        Transaction cow2 = createTx(2, 10, "cow");
+        // the same transaction as cow0 signed by another sender
+        Transaction dog0 = createTx(0, 10, "dog");
+        List<Transaction> added = pool.addTransactions(Arrays.asList(cow0, cow1, cow2, dog0));
+        assertEquals(4, added.size());
+
+        pool.removeTransactions(Arrays.asList(createTx(1, 11, "cow")));
+        assertEquals(2, pool.size());
+        assertEquals(Arrays.asList(cow2), pool.getTransactions(cow2.getSender()));
+
+        pool.removeTransactions(Arrays.asList(cow2));
+        assertEquals(1, pool.size());
+        assertTrue(pool.getTransactions(cow2.getSender()).isEmpty());
+        assertTrue(pool.contains(hashOf(dog0)));
+    }
+
+    private Transaction createTx(int nonce, int gasPrice, String sender) {
+        Transaction tx = new Transaction(new byte[]{(byte) nonce}, new byte[]{(byte) gasPrice},
+                Hex.decode("4255"), Hex.decode(CAT), Hex.decode("0100"), null);
+        tx.sign(HashUtil.sha3(sender.getBytes()));
+        return tx;
+    }
+}
@@ -2,6 +2,7 @@ package org.ethereum.core;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -265,4 +266,14 @@ public class TransactionTest {
 
         System.out.println( Hex.toHexString(tx2.getSender()));
     }
+
+    @Test // hash is computed once, signing doesn't change it
+    public void testHashMemoized() {
+        Transaction tx = new Transaction(Hex.decode(RLP_ENCODED_UNSIGNED_TX));
+        byte[] hash = tx.getHash();
+        assertSame(hash, tx.getHash());
+
+        tx.sign(HashUtil.sha3("cow".getBytes()));
+        assertEquals(HASH_TX, Hex.toHexString(tx.getHash()));
+    }
 }
@@ -6,6 +6,8 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
@@ -256,6 +258,54 @@ public class ECKeyTest {
     	assertArrayEquals(pubKey, key.getPubKey());
 	}
 		
+    @Test
+    public void testVerifyBatch() {
+        List<byte[]> hashes = new ArrayList<>();
+        List<ECDSASignature> sigs = new ArrayList<>();
+        List<byte[]> pubs = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            ECKey key = ECKey.fromPrivate(BigInteger.valueOf(1000 + i));
+            byte[] hash = HashUtil.sha3(BigInteger.valueOf(i).toByteArray());
+            hashes.add(hash);
+            sigs.add(key.sign(hash));
+            pubs.add(key.getPubKey());
+        }
+        hashes.set(3, HashUtil.sha3(new byte[]{1}));                           // other message
+        pubs.set(10, pubs.get(11));                                            // other key
+        sigs.set(20, new ECDSASignature(sigs.get(20).r, BigInteger.ZERO));    // s out of range
+        pubs.set(30, new byte[33]);                                            // not a point
+
+        BitSet valid = ECKey.verifyBatch(hashes, sigs, pubs);
+        for (int i = 0; i < 40; ++i)
+            if (i != 30)
+                assertEquals("signature: " + i, ECKey.verify(hashes.get(i), sigs.get(i), pubs.get(i)), valid.get(i));
+        assertFalse(valid.get(30));
+        assertEquals(36, valid.cardinality());
+    }
+
+    @Test
+    public void testRecoverBatch() throws SignatureException {
+        List<byte[]> hashes = new ArrayList<>();
+        List<ECDSASignature> sigs = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            byte[] hash = HashUtil.sha3(BigInteger.valueOf(i).toByteArray());
+            hashes.add(hash);
+            sigs.add(ECKey.fromPrivate(BigInteger.valueOf(1000 + i)).sign(hash));
+        }
+        ECDSASignature broken = new ECDSASignature(sigs.get(5).r, sigs.get(5).s);
+        broken.v = 26;
+        sigs.set(5, broken);
+
+        ECKey[] keys = new ECKey[40];
+        BitSet recovered = ECKey.recoverBatch(hashes, sigs, keys);
+        assertEquals(39, recovered.cardinality());
+        assertFalse(recovered.get(5));
+        assertNull(keys[5]);
+        for (int i = 0; i < 40; ++i)
+            if (i != 5)
+                assertEquals(ECKey.signatureToKey(hashes.get(i), sigs.get(i)), keys[i]);
+    }
+
 	@Test
 	public void testGetPrivKeyBytes() {
 		ECKey key = new ECKey();
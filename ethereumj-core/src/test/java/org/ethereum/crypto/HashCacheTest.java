@@ -0,0 +1,74 @@
+package org.ethereum.crypto;
+
+import org.ethereum.util.LRUMap;
+import org.junit.Test;
+
+import static org.ethereum.util.ByteUtil.longToBytes;
+import static org.junit.Assert.*;
+
+public class HashCacheTest {
+
+    @Test // capacity is never exceeded
+    public void test1() {
+        HashCache cache = new HashCache(100, 1024);
+        for (long i = 0; i < 10000; ++i)
+            cache.put(longToBytes(i), new byte[32]);
+
+        assertTrue(cache.size() <= 100);
+        assertNotNull(cache.get(longToBytes(9999)));
+        assertNull(cache.get(longToBytes(0)));
+    }
+
+    @Test // hits, misses and the size threshold
+    public void test2() {
+        HashCache cache = new HashCache(100, 8);
+        byte[] input = longToBytes(1);
+        byte[] hash = Keccak256.digest(input);
+
+        assertNull(cache.get(input));
+        cache.put(input, hash);
+        assertSame(hash, cache.get(input));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+
+        byte[] large = new byte[9];
+        cache.put(large, hash);
+        assertNull(cache.get(large));
+        assertEquals(1, cache.size());
+    }
+
+    @Test // the caller may change its array after it was cached
+    public void test3() {
+        HashCache cache = new HashCache(100, 1024);
+        byte[] input = longToBytes(1);
+        cache.put(input, Keccak256.digest(input));
+
+        input[7] = 2;
+        assertNull(cache.get(input));
+        assertNotNull(cache.get(longToBytes(1)));
+    }
+
+    @Test // turned off
+    public void test4() {
+        HashCache cache = new HashCache(0, 1024);
+        cache.put(longToBytes(1), new byte[32]);
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(longToBytes(1)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test // LRUMap drops the least recently used entry
+    public void test5() {
+        LRUMap<Integer, Integer> map = new LRUMap<>(0, 2);
+        map.put(1, 1);
+        map.put(2, 2);
+        map.get(1);
+        map.put(3, 3);
+
+        assertEquals(2, map.size());
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+    }
+}
@@ -0,0 +1,68 @@
+package org.ethereum.crypto;
+
+import org.junit.Test;
+import org.spongycastle.crypto.digests.SHA3Digest;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class HashUtilTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2000;
+
+    @Test // all the primitives give the right results while used from many threads
+    public void testConcurrentHashing() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; ++t) {
+                final long seed = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return hashRounds(seed);
+                    }
+                }));
+            }
+            for (Future<Integer> result : results)
+                assertEquals(Integer.valueOf(0), result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /* returns the number of wrong results */
+    private static int hashRounds(long seed) throws Exception {
+        Random random = new Random(seed);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        int wrong = 0;
+
+        for (int i = 0; i < ROUNDS; ++i) {
+            byte[] input = new byte[random.nextInt(300)];
+            random.nextBytes(input);
+
+            if (!Arrays.equals(sha256.digest(input), HashUtil.sha256(input))) ++wrong;
+
+            byte[] expectedDouble = sha256.digest(sha256.digest(input));
+            if (!Arrays.equals(expectedDouble, HashUtil.doubleDigest(input))) ++wrong;
+
+            SHA3Digest sha3 = new SHA3Digest(256);
+            sha3.update(input, 0, input.length);
+            byte[] expectedSha3 = new byte[32];
+            sha3.doFinal(expectedSha3, 0);
+            if (!Arrays.equals(expectedSha3, HashUtil.sha3(input))) ++wrong;
+        }
+        return wrong;
+    }
+}
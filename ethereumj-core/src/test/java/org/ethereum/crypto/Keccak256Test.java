@@ -0,0 +1,99 @@
+package org.ethereum.crypto;
+
+import org.junit.Test;
+import org.spongycastle.crypto.digests.SHA3Digest;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Keccak256Test {
+
+    @Test // known values
+    public void test1() {
+        assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470",
+                Hex.toHexString(Keccak256.digest(new byte[0])));
+        assertEquals("c85ef7d79691fe79573b1a7064c19c1a9819ebdbd1faaab1a8ec92344438aaf4",
+                Hex.toHexString(Keccak256.digest("cow".getBytes())));
+    }
+
+    @Test // same as spongycastle around the block boundaries
+    public void test2() {
+        Random random = new Random(42);
+        for (int length = 0; length < 3 * 136 + 2; ++length) {
+            byte[] input = new byte[length];
+            random.nextBytes(input);
+            assertEquals("length: " + length, Hex.toHexString(spongyDigest(input)),
+                    Hex.toHexString(Keccak256.digest(input)));
+        }
+    }
+
+    @Test // slices and buffers
+    public void test3() {
+        byte[] input = new byte[1000];
+        new Random(7).nextBytes(input);
+        String expected = Hex.toHexString(spongyDigest(Arrays.copyOfRange(input, 100, 400)));
+
+        byte[] out = new byte[40];
+        Keccak256.digest(input, 100, 300, out, 8);
+        assertEquals(expected, Hex.toHexString(out, 8, 32));
+
+        ByteBuffer heap = ByteBuffer.wrap(input, 100, 300);
+        byte[] heapOut = new byte[32];
+        Keccak256.digest(heap, heapOut, 0);
+        assertEquals(expected, Hex.toHexString(heapOut));
+        assertFalse(heap.hasRemaining());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(300);
+        direct.put(input, 100, 300).flip();
+        byte[] directOut = new byte[32];
+        Keccak256.digest(direct, directOut, 0);
+        assertEquals(expected, Hex.toHexString(directOut));
+    }
+
+    @Test
+    public void performance() {
+        boolean performanceEnabled = false;
+
+        if (performanceEnabled) {
+            final int ITERATIONS = 100000;
+            Random random = new Random(1);
+            // a hash, an address key, a transaction, a block header
+            for (int length : new int[]{32, 64, 150, 500}) {
+                byte[] input = new byte[length];
+                random.nextBytes(input);
+                byte[] out = new byte[32];
+
+                long start1 = System.currentTimeMillis();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    SHA3Digest digest = new SHA3Digest(256);
+                    digest.update(input, 0, input.length);
+                    digest.doFinal(out, 0);
+                }
+                long end1 = System.currentTimeMillis();
+
+                long start2 = System.currentTimeMillis();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Keccak256.digest(input, 0, input.length, out, 0);
+                }
+                long end2 = System.currentTimeMillis();
+
+                System.out.println("Result SHA3Digest [" + length + " bytes]\t: " + (end1 - start1) + "ms");
+                System.out.println("Result Keccak256 [" + length + " bytes]\t: " + (end2 - start2) + "ms");
+            }
+        } else {
+            System.out.println("Performance test for Keccak256 disabled");
+        }
+    }
+
+    private static byte[] spongyDigest(byte[] input) {
+        SHA3Digest digest = new SHA3Digest(256);
+        digest.update(input, 0, input.length);
+        byte[] out = new byte[32];
+        digest.doFinal(out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,85 @@
+package org.ethereum.db;
+
+import org.ethereum.crypto.HashUtil;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.ethereum.util.ByteUtil.longToBytes;
+import static org.junit.Assert.*;
+
+public class BlockHashIndexTest {
+
+    @Test // lookup in both directions survives the growth of the buffers
+    public void test1() {
+
+        BlockHashIndex index = new BlockHashIndex(16);
+        for (long i = 0; i < 5000; ++i)
+            index.add(i, HashUtil.sha3(longToBytes(i)));
+
+        assertEquals(5000, index.size());
+        for (long i = 0; i < 5000; ++i) {
+            byte[] hash = HashUtil.sha3(longToBytes(i));
+            assertEquals(Hex.toHexString(hash), Hex.toHexString(index.getHash(i)));
+            assertEquals(i, index.getNumber(hash));
+        }
+    }
+
+    @Test // unknown numbers and hashes
+    public void test2() {
+
+        BlockHashIndex index = new BlockHashIndex();
+        index.add(0, HashUtil.sha3(longToBytes(0)));
+
+        assertNull(index.getHash(1));
+        assertNull(index.getHash(-1));
+        assertEquals(-1, index.getNumber(new byte[32]));
+        assertEquals(-1, index.getNumber(new byte[20]));
+    }
+
+    @Test(expected = IllegalArgumentException.class) // only the next number is accepted
+    public void test3() {
+
+        BlockHashIndex index = new BlockHashIndex();
+        index.add(1, HashUtil.sha3(longToBytes(1)));
+    }
+
+    @Test // a truncated index forgets the blocks above, the chain goes on with other hashes
+    public void test4() {
+
+        BlockHashIndex index = new BlockHashIndex(16);
+        for (long i = 0; i < 1000; ++i)
+            index.add(i, HashUtil.sha3(longToBytes(i)));
+
+        index.truncate(500);
+        assertEquals(500, index.size());
+        assertNull(index.getHash(500));
+        assertEquals(-1, index.getNumber(HashUtil.sha3(longToBytes(700))));
+
+        for (long i = 500; i < 1000; ++i)
+            index.add(i, HashUtil.sha3(longToBytes(i + 1000)));
+        for (long i = 0; i < 1000; ++i) {
+            byte[] hash = HashUtil.sha3(longToBytes(i < 500 ? i : i + 1000));
+            assertEquals(i, index.getNumber(hash));
+        }
+        assertEquals(-1, index.getNumber(HashUtil.sha3(longToBytes(700))));
+    }
+
+    @Test // the chunks of the hashes are allocated and released as the index grows and shrinks
+    public void test5() {
+
+        BlockHashIndex index = new BlockHashIndex();
+        long count = BlockHashIndex.CHUNK_SIZE + 10;
+        for (long i = 0; i < count; ++i)
+            index.add(i, HashUtil.sha3(longToBytes(i)));
+        assertEquals(count - 1, index.getNumber(HashUtil.sha3(longToBytes(count - 1))));
+
+        index.truncate(5);
+        assertEquals(4, index.getNumber(HashUtil.sha3(longToBytes(4))));
+        assertEquals(-1, index.getNumber(HashUtil.sha3(longToBytes(count - 1))));
+
+        index.close();
+        assertEquals(0, index.size());
+        assertNull(index.getHash(0));
+        assertEquals(-1, index.getNumber(HashUtil.sha3(longToBytes(0))));
+    }
+}
@@ -0,0 +1,202 @@
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Genesis;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.RLP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.ethereum.util.ByteUtil.longToBytes;
+import static org.junit.Assert.*;
+
+public class BlockStoreTest {
+
+    private DatabaseImpl db;
+
+    @Before
+    public void setUp() {
+        db = new DatabaseImpl("blockstore-test");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test // lookup by number and by hash
+    public void test1() {
+
+        BlockStore store = new BlockStore(db);
+        assertTrue(store.isEmpty());
+
+        Block genesis = Genesis.getInstance();
+        Block block1 = createChild(genesis);
+
+        store.saveBlock(genesis, BigInteger.ONE);
+        store.saveBlock(block1, BigInteger.TEN);
+
+        assertEquals(Hex.toHexString(genesis.getHash()),
+                Hex.toHexString(store.getBlockHashByNumber(0)));
+        assertEquals(Hex.toHexString(block1.getHash()),
+                Hex.toHexString(store.getBlockByNumber(1).getHash()));
+        assertEquals(1, store.getBlockByHash(block1.getHash()).getNumber());
+
+        assertNull(store.getBlockByNumber(2));
+        assertNull(store.getBlockByHash(new byte[32]));
+    }
+
+    @Test // head and total difficulty survive the reopening of the store
+    public void test2() {
+
+        Block genesis = Genesis.getInstance();
+        Block block1 = createChild(genesis);
+
+        BlockStore store = new BlockStore(db);
+        store.saveBlock(genesis, BigInteger.ONE);
+        store.saveBlock(block1, BigInteger.TEN);
+
+        BlockStore reopened = new BlockStore(db);
+        assertFalse(reopened.isEmpty());
+        assertEquals(BigInteger.TEN, reopened.getTotalDifficulty());
+        assertEquals(Hex.toHexString(block1.getHash()),
+                Hex.toHexString(reopened.getHead().getHash()));
+    }
+
+    @Test // blocks keyed by the plain number are re-indexed
+    public void test3() {
+
+        Block genesis = Genesis.getInstance();
+        Block block1 = createChild(genesis);
+        db.put(longToBytes(0), genesis.getEncoded());
+        db.put(longToBytes(1), block1.getEncoded());
+
+        BlockStore store = new BlockStore(db);
+        assertTrue(store.isEmpty());
+        assertTrue(store.migrateLegacyLayout());
+
+        assertEquals(Hex.toHexString(block1.getHash()),
+                Hex.toHexString(store.getHeadHash()));
+        assertEquals(genesis.getCumulativeDifficulty().add(block1.getCumulativeDifficulty()),
+                store.getTotalDifficulty());
+        assertNull(db.get(longToBytes(1)));
+    }
+
+    @Test // header is read without the body, the body is loaded on demand
+    public void test4() {
+
+        Block genesis = Genesis.getInstance();
+        Block block1 = createChild(genesis);
+
+        BlockStore store = new BlockStore(db);
+        store.saveBlock(genesis, BigInteger.ONE);
+        store.saveBlock(block1, BigInteger.TEN);
+
+        BlockHeader header = store.getHeaderByNumber(1);
+        assertEquals(1, header.getNumber());
+        assertEquals(Hex.toHexString(block1.getParentHash()),
+                Hex.toHexString(header.getParentHash()));
+        assertNull(store.getHeaderByHash(new byte[32]));
+
+        Block stored = store.getBlockByNumber(1);
+        assertEquals(Hex.toHexString(block1.getEncoded()),
+                Hex.toHexString(stored.getEncoded()));
+        assertEquals(0, stored.getTransactionsList().size());
+        assertEquals(0, stored.getUncleList().size());
+        assertEquals(Hex.toHexString(block1.getEncodedBody()),
+                Hex.toHexString(stored.getEncodedBody()));
+    }
+
+    @Test // transactions are found by their hash
+    public void test5() {
+
+        Block genesis = Genesis.getInstance();
+
+        Transaction tx = new Transaction(new byte[]{1}, Hex.decode("09184e72a000"), Hex.decode("03e8"),
+                Hex.decode("cd2a3d9f938e13cd947ec05abc7fe734df8dd826"), Hex.decode("0100"), null);
+        tx.sign(HashUtil.sha3("cow".getBytes()));
+        TransactionReceipt receipt = new TransactionReceipt(tx, new byte[32], new byte[]{1});
+
+        byte[] header = createChild(genesis).getHeader().getEncoded();
+        Block block1 = new Block(RLP.encodeList(header, RLP.encodeList(receipt.getEncoded()), RLP.encodeList()));
+
+        BlockStore store = new BlockStore(db);
+        store.saveBlock(genesis, BigInteger.ONE);
+        store.saveBlock(block1, BigInteger.TEN);
+
+        TransactionReceipt stored = store.getTransactionReceipt(tx.getHash());
+        assertNotNull(stored);
+        assertEquals(Hex.toHexString(tx.getEncoded()),
+                Hex.toHexString(stored.getTransaction().getEncoded()));
+        assertEquals(Hex.toHexString(receipt.getEncoded()),
+                Hex.toHexString(stored.getEncoded()));
+
+        assertNull(store.getTransactionReceipt(new byte[32]));
+    }
+
+    @Test // a re-indexing cut off is resumed from the head
+    public void test6() {
+
+        Block genesis = Genesis.getInstance();
+        Block block1 = createChild(genesis);
+        db.put(longToBytes(1), block1.getEncoded());
+
+        // genesis converted when the re-indexing stopped
+        BlockStore store = new BlockStore(db);
+        db.put(BlockStore.MIGRATION_KEY, new byte[]{1});
+        store.saveBlock(genesis, genesis.getCumulativeDifficulty());
+
+        BlockStore reopened = new BlockStore(db);
+        assertTrue(reopened.migrateLegacyLayout());
+        assertEquals(Hex.toHexString(block1.getHash()),
+                Hex.toHexString(reopened.getHeadHash()));
+        assertEquals(genesis.getCumulativeDifficulty().add(block1.getCumulativeDifficulty()),
+                reopened.getTotalDifficulty());
+        assertNull(db.get(longToBytes(1)));
+        assertNull(db.get(BlockStore.MIGRATION_KEY));
+
+        // done, the chain is not traversed again
+        assertFalse(new BlockStore(db).migrateLegacyLayout());
+    }
+
+    @Test // a block read from the store and changed is encoded with the new header and its body
+    public void test7() {
+
+        Block genesis = Genesis.getInstance();
+
+        Transaction tx = new Transaction(new byte[]{1}, Hex.decode("09184e72a000"), Hex.decode("03e8"),
+                Hex.decode("cd2a3d9f938e13cd947ec05abc7fe734df8dd826"), Hex.decode("0100"), null);
+        tx.sign(HashUtil.sha3("cow".getBytes()));
+        TransactionReceipt receipt = new TransactionReceipt(tx, new byte[32], new byte[]{1});
+
+        byte[] header = createChild(genesis).getHeader().getEncoded();
+        Block block1 = new Block(RLP.encodeList(header, RLP.encodeList(receipt.getEncoded()), RLP.encodeList()));
+
+        BlockStore store = new BlockStore(db);
+        store.saveBlock(genesis, BigInteger.ONE);
+        store.saveBlock(block1, BigInteger.TEN);
+
+        byte[] stateRoot = HashUtil.sha3("state".getBytes());
+        Block stored = store.getBlockByNumber(1);
+        stored.setStateRoot(stateRoot);
+
+        Block decoded = new Block(stored.getEncoded());
+        assertEquals(Hex.toHexString(stateRoot), Hex.toHexString(decoded.getStateRoot()));
+        assertEquals(1, decoded.getTxReceiptList().size());
+        assertEquals(Hex.toHexString(receipt.getEncoded()),
+                Hex.toHexString(decoded.getTxReceiptList().get(0).getEncoded()));
+    }
+
+    private Block createChild(Block parent) {
+        return new Block(parent.getHash(), Genesis.UNCLES_HASH, parent.getCoinbase(),
+                parent.getDifficulty(), parent.getNumber() + 1, 0, parent.getGasLimit(),
+                0, parent.getTimestamp() + 10, null, new byte[32], null, null);
+    }
+}
@@ -0,0 +1,103 @@
+package org.ethereum.db;
+
+import org.ethereum.facade.Repository;
+import org.ethereum.vm.DataWord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class StateSnapshotTest {
+
+    private static final byte[] COW   = Hex.decode("cd2a3d9f938e13cd947ec05abc7fe734df8dd826");
+    private static final byte[] HORSE = Hex.decode("13978aee95f38490e9769c39b2773ed763d9cd5f");
+
+    private Repository source;
+    private Repository target;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        source = new RepositoryImpl("snapshot-chain-1", "snapshot-details-1", "snapshot-state-1");
+        target = new RepositoryImpl("snapshot-chain-2", "snapshot-details-2", "snapshot-state-2");
+        file = File.createTempFile("state", ".snapshot");
+
+        source.addBalance(COW, BigInteger.valueOf(1000));
+        source.addBalance(HORSE, BigInteger.valueOf(2000));
+        source.increaseNonce(HORSE);
+        source.saveCode(HORSE, Hex.decode("60016000546006601160003960066000f2"));
+        source.addStorageRow(HORSE, new DataWord(1), new DataWord(42));
+        source.getWorldState().sync();
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+        target.close();
+        file.delete();
+    }
+
+    @Test // accounts, code and storage are restored with the same root
+    public void test1() {
+
+        assertTrue(source.exportState(file));
+        assertTrue(target.importState(file, source.getWorldState().getRootHash()));
+
+        assertEquals(Hex.toHexString(source.getWorldState().getRootHash()),
+                Hex.toHexString(target.getWorldState().getRootHash()));
+        assertEquals(BigInteger.valueOf(1000), target.getBalance(COW));
+        assertEquals(BigInteger.valueOf(2000), target.getBalance(HORSE));
+        assertEquals(BigInteger.ONE, target.getNonce(HORSE));
+        assertEquals("60016000546006601160003960066000f2", Hex.toHexString(target.getCode(HORSE)));
+        assertEquals(new DataWord(42), target.getStorageValue(HORSE, new DataWord(1)));
+    }
+
+    @Test // nothing is loaded if the root doesn't match
+    public void test2() {
+
+        assertTrue(source.exportState(file));
+        assertFalse(target.importState(file, new byte[32]));
+
+        assertEquals(BigInteger.ZERO, target.getBalance(COW));
+        assertNull(target.getContractDetails(HORSE));
+    }
+
+    @Test // truncated file is rejected
+    public void test3() throws IOException {
+
+        assertTrue(source.exportState(file));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 20);
+        raf.close();
+
+        assertFalse(target.importState(file, null));
+        assertEquals(BigInteger.ZERO, target.getBalance(COW));
+    }
+
+    @Test // only the accounts of the state are exported, the old details of the target are dropped
+    public void test4() {
+
+        byte[] dog = Hex.decode("0000000000000000000000000000000000000d09");
+        target.addBalance(dog, BigInteger.TEN);
+        target.getWorldState().sync();
+
+        // the details of cow are left without an account
+        source.getWorldState().update(COW, new byte[0]);
+        source.getWorldState().sync();
+
+        assertTrue(source.exportState(file));
+        assertTrue(target.importState(file, source.getWorldState().getRootHash()));
+
+        assertNull(target.getContractDetails(COW));
+        assertNull(target.getContractDetails(dog));
+        assertEquals(BigInteger.ZERO, target.getBalance(dog));
+        assertEquals(new DataWord(42), target.getStorageValue(HORSE, new DataWord(1)));
+    }
+}
@@ -0,0 +1,169 @@
+package org.ethereum.listener;
+
+import org.ethereum.core.Block;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.core.BlockTestData.createChain;
+import static org.junit.Assert.*;
+
+public class EthereumListenerBusTest {
+
+    @Test // the events come on the thread of the bus, in order
+    public void test1() throws Exception {
+        EthereumListenerBus bus = new EthereumListenerBus(10);
+        RecordingListener listener = new RecordingListener(null);
+        bus.subscribe(listener);
+        try {
+            bus.trace("one");
+            bus.trace("two");
+            bus.onSyncDone();
+
+            assertEquals("one", listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("two", listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("syncDone", listener.events.poll(1, TimeUnit.SECONDS));
+            assertNotSame(Thread.currentThread(), listener.thread);
+        } finally {
+            bus.close();
+        }
+    }
+
+    @Test // a listener behind loses the traces, gets the latest block and the rare events
+    public void test2() throws Exception {
+        EthereumListenerBus bus = new EthereumListenerBus(2);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(release);
+        bus.subscribe(listener);
+        try {
+            // the first one holds the listener
+            bus.trace("hold");
+            assertEquals("hold", listener.events.poll(1, TimeUnit.SECONDS));
+
+            List<Block> blocks = createChain(4);
+            bus.trace("one");
+            bus.trace("two");
+            bus.trace("dropped");
+            for (Block block : blocks)
+                bus.onBlock(block);
+            bus.onSyncDone();
+            bus.trace("dropped too");
+            assertEquals(5, bus.getDropped());
+
+            release.countDown();
+            assertEquals("one", listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("two", listener.events.poll(1, TimeUnit.SECONDS));
+            assertSame(blocks.get(3), listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("syncDone", listener.events.poll(1, TimeUnit.SECONDS));
+            assertNull(listener.events.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            bus.close();
+        }
+    }
+
+    @Test // a failing listener doesn't stop the others
+    public void test3() throws Exception {
+        EthereumListenerBus bus = new EthereumListenerBus(10);
+        RecordingListener listener = new RecordingListener(null);
+        bus.subscribe(new EthereumListenerAdapter() {
+            @Override
+            public void trace(String output) {
+                throw new RuntimeException(output);
+            }
+        });
+        bus.subscribe(listener);
+        try {
+            bus.trace("one");
+            bus.trace("two");
+            assertEquals("one", listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("two", listener.events.poll(1, TimeUnit.SECONDS));
+        } finally {
+            bus.close();
+        }
+    }
+
+    @Test // a slow listener doesn't hold up the others
+    public void test4() throws Exception {
+        EthereumListenerBus bus = new EthereumListenerBus(10);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener slow = new RecordingListener(release);
+        RecordingListener listener = new RecordingListener(null);
+        bus.subscribe(slow);
+        bus.subscribe(listener);
+        try {
+            bus.trace("one");
+            bus.trace("two");
+            assertEquals("one", slow.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("one", listener.events.poll(1, TimeUnit.SECONDS));
+            assertEquals("two", listener.events.poll(1, TimeUnit.SECONDS));
+            assertNull(slow.events.poll(100, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertEquals("two", slow.events.poll(1, TimeUnit.SECONDS));
+        } finally {
+            bus.close();
+        }
+    }
+
+    @Test // the rare events are kept over the capacity, up to as many again
+    public void test5() throws Exception {
+        EthereumListenerBus bus = new EthereumListenerBus(2);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(release);
+        bus.subscribe(listener);
+        try {
+            bus.trace("hold");
+            assertEquals("hold", listener.events.poll(1, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 10; ++i)
+                bus.onSyncDone();
+            assertEquals(6, bus.getDropped());
+
+            release.countDown();
+            for (int i = 0; i < 4; ++i)
+                assertEquals("syncDone", listener.events.poll(1, TimeUnit.SECONDS));
+            assertNull(listener.events.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            bus.close();
+        }
+    }
+
+    private static class RecordingListener extends EthereumListenerAdapter {
+
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        final CountDownLatch release;
+        volatile Thread thread;
+
+        RecordingListener(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void trace(String output) {
+            thread = Thread.currentThread();
+            events.add(output);
+            // the listener is slow until released
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onBlock(Block block) {
+            events.add(block);
+        }
+
+        @Override
+        public void onSyncDone() {
+            events.add("syncDone");
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.ethereum.net;
+
+import org.ethereum.core.Block;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.ethereum.core.BlockTestData.createChain;
+import static org.junit.Assert.*;
+
+public class BlockDownloadSchedulerTest {
+
+    private static final long TIMEOUT = 1000;
+
+    private List<Block> chain;
+    private HashQueue queue;
+    private BlockDownloadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        chain = createChain(100);
+        queue = new HashQueue(chain);
+        scheduler = new BlockDownloadScheduler(queue, 10, 1, TIMEOUT);
+        scheduler.start();
+    }
+
+    @Test // the ranges go to different peers and come back in order, whatever order they arrive in
+    public void test1() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        List<byte[]> hashes2 = scheduler.requestRange("peer2", 0);
+        assertEquals(10, hashes1.size());
+        assertEquals(10, hashes2.size());
+        assertTrue(scheduler.requestRange("peer1", 0).isEmpty());
+
+        assertEquals(10, scheduler.onBlocks("peer2", blocks(hashes2), 100));
+        assertTrue(queue.added.isEmpty());
+
+        assertEquals(10, scheduler.onBlocks("peer1", blocks(hashes1), 200));
+        assertEquals(chain.subList(0, 20), queue.added);
+        assertFalse(scheduler.isDone());
+    }
+
+    @Test // a range not delivered in time goes to another peer, the late delivery is dropped
+    public void test2() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        List<byte[]> hashes2 = scheduler.requestRange("peer2", TIMEOUT);
+        assertEquals(hashes1, hashes2);
+
+        assertEquals(0, scheduler.onBlocks("peer1", blocks(hashes1), TIMEOUT + 10));
+        assertEquals(10, scheduler.onBlocks("peer2", blocks(hashes2), TIMEOUT + 20));
+        assertEquals(chain.subList(0, 10), queue.added);
+    }
+
+    @Test // the rest of a range delivered in part is asked from another peer
+    public void test3() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        assertEquals(3, scheduler.onBlocks("peer1", blocks(hashes1.subList(0, 3)), 10));
+        assertEquals(chain.subList(0, 3), queue.added);
+
+        // the peer failing the rest gets the next range
+        List<byte[]> next = scheduler.requestRange("peer1", 20);
+        assertArrayEquals(chain.get(10).getHash(), next.get(0));
+
+        List<byte[]> rest = scheduler.requestRange("peer2", 30);
+        assertEquals(hashes1.subList(3, 10), rest);
+        scheduler.onBlocks("peer2", blocks(rest), 40);
+        assertEquals(chain.subList(0, 10), queue.added);
+
+        scheduler.onBlocks("peer1", blocks(next), 50);
+        assertEquals(chain.subList(0, 20), queue.added);
+    }
+
+    @Test // the slower peer gets the smaller ranges
+    public void test4() {
+        scheduler.onBlocks("fast", blocks(scheduler.requestRange("fast", 0)), 100);
+        scheduler.onBlocks("slow", blocks(scheduler.requestRange("slow", 0)), 1000);
+        assertEquals(100, scheduler.getScore("fast"), 0.001);
+        assertEquals(10, scheduler.getScore("slow"), 0.001);
+
+        assertEquals(10, scheduler.requestRange("fast", 1000).size());
+        assertEquals(2, scheduler.requestRange("slow", 1000).size());
+    }
+
+    @Test // a gone peer's range is asked from the others, done once all the blocks are delivered
+    public void test5() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        scheduler.removePeer("peer1");
+
+        while (!scheduler.isDone()) {
+            List<byte[]> hashes = scheduler.requestRange("peer2", 0);
+            scheduler.onBlocks("peer2", blocks(hashes), 10);
+        }
+        assertEquals(chain, queue.added);
+        assertArrayEquals(chain.get(0).getHash(), hashes1.get(0));
+    }
+
+    @Test // after a reset the ranges handed out before are forgotten
+    public void test6() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        scheduler.reset();
+        assertTrue(scheduler.requestRange("peer2", 0).isEmpty());
+        assertEquals(0, scheduler.onBlocks("peer1", blocks(hashes1), 10));
+        assertTrue(queue.added.isEmpty());
+    }
+
+    @Test // a window of requests per peer, the blocks are matched to the range they start
+    public void test7() {
+        scheduler = new BlockDownloadScheduler(queue, 10, 3, TIMEOUT);
+        scheduler.start();
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        List<byte[]> hashes2 = scheduler.requestRange("peer1", 0);
+        List<byte[]> hashes3 = scheduler.requestRange("peer1", 0);
+        assertTrue(scheduler.requestRange("peer1", 0).isEmpty());
+
+        assertEquals(10, scheduler.onBlocks("peer1", blocks(hashes2), 10));
+        assertTrue(queue.added.isEmpty());
+        assertEquals(10, scheduler.requestRange("peer1", 10).size());
+
+        // the empty answer is for the oldest request
+        assertEquals(0, scheduler.onBlocks("peer1", Collections.<Block>emptyList(), 20));
+        List<byte[]> again = scheduler.requestRange("peer2", 30);
+        assertEquals(hashes1, again);
+
+        scheduler.onBlocks("peer2", blocks(again), 40);
+        scheduler.onBlocks("peer1", blocks(hashes3), 50);
+        assertEquals(chain.subList(0, 30), queue.added);
+    }
+
+    @Test // a range every peer answers without stalls the download, the blocks after it wait
+    public void test8() {
+        List<byte[]> hashes1 = scheduler.requestRange("peer1", 0);
+        List<byte[]> hashes2 = scheduler.requestRange("peer2", 0);
+
+        assertEquals(0, scheduler.onBlocks("peer1", Collections.<Block>emptyList(), 10));
+        assertFalse(scheduler.isStalled());
+        assertEquals(10, scheduler.onBlocks("peer2", blocks(hashes2), 20));
+
+        // the peer lacking the range is not asked for it again
+        assertArrayEquals(chain.get(20).getHash(), scheduler.requestRange("peer1", 30).get(0));
+        assertEquals(hashes1, scheduler.requestRange("peer2", 30));
+        assertEquals(0, scheduler.onBlocks("peer2", Collections.<Block>emptyList(), 40));
+
+        assertTrue(scheduler.isStalled());
+        assertFalse(scheduler.isDone());
+        assertTrue(queue.added.isEmpty());
+
+        scheduler.reset();
+        assertFalse(scheduler.isStalled());
+    }
+
+    @Test // a range is never given up while a peer may deliver it
+    public void test9() {
+        long now = 0;
+        List<byte[]> hashes1 = scheduler.requestRange("peer0", now);
+        for (int i = 1; i <= 10; ++i) {
+            now += TIMEOUT;
+            assertEquals(hashes1, scheduler.requestRange("peer" + i, now));
+        }
+        assertFalse(scheduler.isStalled());
+
+        assertEquals(10, scheduler.onBlocks("peer10", blocks(hashes1), now + 10));
+        assertEquals(chain.subList(0, 10), queue.added);
+    }
+
+    private List<Block> blocks(List<byte[]> hashes) {
+        List<Block> blocks = new ArrayList<>();
+        for (byte[] hash : hashes)
+            for (Block block : chain)
+                if (Arrays.equals(block.getHash(), hash)) blocks.add(block);
+        return blocks;
+    }
+
+    private static class HashQueue implements BlockDownloadScheduler.Queue {
+
+        final List<byte[]> hashes = new ArrayList<>();
+        final List<Block> added = new ArrayList<>();
+
+        HashQueue(List<Block> chain) {
+            for (Block block : chain)
+                hashes.add(block.getHash());
+        }
+
+        @Override
+        public List<byte[]> getHashes(int max) {
+            List<byte[]> taken = new ArrayList<>(hashes.subList(0, Math.min(max, hashes.size())));
+            hashes.subList(0, taken.size()).clear();
+            return taken.isEmpty() ? Collections.<byte[]>emptyList() : taken;
+        }
+
+        @Override
+        public void addBlocks(List<Block> blocks) {
+            added.addAll(blocks);
+        }
+    }
+}
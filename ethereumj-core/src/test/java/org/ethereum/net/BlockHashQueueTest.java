@@ -0,0 +1,97 @@
+package org.ethereum.net;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlockHashQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test // same as the array deque it replaces, all in memory
+    public void test1() {
+        assertSameAsDeque(new BlockHashQueue(), 1);
+    }
+
+    @Test // same with most of the hashes spilled to the file
+    public void test2() throws Exception {
+        BlockHashQueue queue = new BlockHashQueue(16, folder.getRoot());
+        assertSameAsDeque(queue, 2);
+        assertEquals(1, folder.getRoot().list().length);
+
+        queue.clear();
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test // the hashes retrieved backwards from the best one are taken in the block order
+    public void test3() {
+        BlockHashQueue queue = new BlockHashQueue(8, folder.getRoot());
+        for (int i = 100; i > 0; --i)
+            queue.addLast(hash(i));
+        assertTrue(queue.spilledSize() > 0);
+        assertArrayEquals(hash(1), queue.peekLast());
+
+        queue.addFirst(hash(101));
+        for (int i = 1; i <= 101; ++i)
+            assertArrayEquals(hash(i), queue.removeLast());
+        assertNull(queue.removeLast());
+        assertNull(queue.peekLast());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test // no file to spill to, the hashes stay in memory
+    public void test4() {
+        BlockHashQueue queue = new BlockHashQueue(4, new File(folder.getRoot(), "missing"));
+        for (int i = 0; i < 50; ++i)
+            queue.addLast(hash(i));
+        assertEquals(0, queue.spilledSize());
+        for (int i = 49; i >= 0; --i)
+            assertArrayEquals(hash(i), queue.removeLast());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test5() {
+        new BlockHashQueue().addLast(new byte[20]);
+    }
+
+    private static void assertSameAsDeque(BlockHashQueue queue, long seed) {
+        Random random = new Random(seed);
+        Deque<byte[]> deque = new ArrayDeque<>();
+        for (int i = 0; i < 20000; ++i) {
+            // mostly growing first, then mostly draining
+            int op = random.nextInt(10);
+            boolean growing = i < 10000;
+            if (op < (growing ? 6 : 2)) {
+                byte[] hash = hash(i);
+                deque.addLast(hash);
+                queue.addLast(hash);
+            } else if (op < (growing ? 8 : 3)) {
+                byte[] hash = hash(i);
+                deque.addFirst(hash);
+                queue.addFirst(hash);
+            } else if (op < 9) {
+                assertArrayEquals(deque.pollLast(), queue.removeLast());
+            } else {
+                assertArrayEquals(deque.peekLast(), queue.peekLast());
+            }
+            assertEquals(deque.size(), queue.size());
+        }
+        while (!deque.isEmpty())
+            assertArrayEquals(deque.pollLast(), queue.removeLast());
+        assertTrue(queue.isEmpty());
+    }
+
+    private static byte[] hash(int i) {
+        byte[] hash = new byte[BlockHashQueue.HASH_LENGTH];
+        new Random(i).nextBytes(hash);
+        return hash;
+    }
+}
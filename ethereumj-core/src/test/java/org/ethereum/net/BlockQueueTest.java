@@ -0,0 +1,41 @@
+package org.ethereum.net;
+
+import org.ethereum.core.Block;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockQueueTest {
+
+    @Test // paused at the count limit, resumed only once the queue is down to the half
+    public void test1() {
+        BlockQueue.Flow flow = new BlockQueue.Flow(10, 1000);
+
+        assertFalse(flow.update(9, 0));
+        assertTrue(flow.update(10, 0));
+        assertTrue(flow.update(12, 0));
+        assertTrue(flow.update(6, 0));
+        assertFalse(flow.update(5, 0));
+        assertFalse(flow.isPaused());
+    }
+
+    @Test // paused at the size limit, resumed when both the count and the size are down to the half
+    public void test2() {
+        BlockQueue.Flow flow = new BlockQueue.Flow(10, 1000);
+
+        assertTrue(flow.update(1, 1000));
+        assertTrue(flow.update(1, 501));
+        assertTrue(flow.update(6, 500));
+        assertFalse(flow.update(5, 500));
+    }
+
+    @Test // a block takes about twice its encoded size, the larger block the more
+    public void test3() {
+        Block small = new Block(new byte[32], null, null, null, 1, 0, 0, 0, 10, null, null, null, null);
+        Block large = new Block(new byte[32], null, null, null, 1, 0, 0, 0, 10, new byte[1024], null, null, null);
+
+        assertEquals(2L * small.getEncoded().length, BlockQueue.estimateSize(small));
+        assertEquals(2L * large.getEncoded().length, BlockQueue.estimateSize(large));
+        assertTrue(BlockQueue.estimateSize(large) > BlockQueue.estimateSize(small) + 2048);
+    }
+}
@@ -0,0 +1,144 @@
+package org.ethereum.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import org.ethereum.net.eth.GetBlocksMessage;
+import org.ethereum.net.message.Message;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.net.message.StaticMessages.GET_TRANSACTIONS_MESSAGE;
+import static org.ethereum.net.message.StaticMessages.PING_MESSAGE;
+import static org.ethereum.net.message.StaticMessages.PONG_MESSAGE;
+import static org.junit.Assert.*;
+
+public class MessageQueueTest {
+
+    @Test // up to the window of messages wait for the answers, an answer lets the next one go
+    public void test1() throws Exception {
+        EventLoopGroup group = new LocalEventLoopGroup();
+        final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+        final MessageQueue msgQueue = new MessageQueue(null, 2, 10000);
+        try {
+            LocalAddress address = new LocalAddress("MessageQueueTest");
+            new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            sent.add(msg);
+                        }
+                    })
+                    .bind(address).sync();
+            Channel channel = new Bootstrap()
+                    .group(group)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelActive(ChannelHandlerContext ctx) {
+                            msgQueue.activate(ctx);
+                        }
+                    })
+                    .connect(address).sync().channel();
+
+            msgQueue.sendMessage(PING_MESSAGE);
+            msgQueue.sendMessage(GET_TRANSACTIONS_MESSAGE);
+            msgQueue.sendMessage(PING_MESSAGE);
+            msgQueue.sendMessage(PONG_MESSAGE);
+
+            assertSame(PING_MESSAGE, sent.poll(1, TimeUnit.SECONDS));
+            assertSame(GET_TRANSACTIONS_MESSAGE, sent.poll(1, TimeUnit.SECONDS));
+            assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+
+            // the pong answers the ping, not the older get transactions
+            receive(channel, msgQueue, PONG_MESSAGE);
+            assertSame(PING_MESSAGE, sent.poll(1, TimeUnit.SECONDS));
+            assertSame(PONG_MESSAGE, sent.poll(1, TimeUnit.SECONDS));
+            assertEquals(2, outstanding(channel, msgQueue));
+
+            receive(channel, msgQueue, PONG_MESSAGE);
+            assertEquals(1, outstanding(channel, msgQueue));
+        } finally {
+            msgQueue.close();
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test // a blocks request not answered in time leaves the window, it is not sent again
+    public void test2() throws Exception {
+        EventLoopGroup group = new LocalEventLoopGroup();
+        final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+        final MessageQueue msgQueue = new MessageQueue(null, 1, 100);
+        try {
+            LocalAddress address = new LocalAddress("MessageQueueTest2");
+            new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            sent.add(msg);
+                        }
+                    })
+                    .bind(address).sync();
+            Channel channel = new Bootstrap()
+                    .group(group)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelActive(ChannelHandlerContext ctx) {
+                            msgQueue.activate(ctx);
+                        }
+                    })
+                    .connect(address).sync().channel();
+
+            GetBlocksMessage getBlocks1 = new GetBlocksMessage(Collections.singletonList(new byte[32]));
+            GetBlocksMessage getBlocks2 = new GetBlocksMessage(Collections.singletonList(new byte[32]));
+            msgQueue.sendMessage(getBlocks1);
+            msgQueue.sendMessage(getBlocks2);
+
+            assertSame(getBlocks1, sent.poll(1, TimeUnit.SECONDS));
+            // the window is free after the timeout, the next request goes instead of a resend
+            assertSame(getBlocks2, sent.poll(1, TimeUnit.SECONDS));
+            assertNull(sent.poll(300, TimeUnit.MILLISECONDS));
+            assertEquals(0, outstanding(channel, msgQueue));
+        } finally {
+            msgQueue.close();
+            group.shutdownGracefully();
+        }
+    }
+
+    /* the answers are received on the event loop */
+    private static void receive(Channel channel, final MessageQueue msgQueue, final Message msg) throws Exception {
+        channel.eventLoop().submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                msgQueue.receivedMessage(msg);
+                return null;
+            }
+        }).sync();
+    }
+
+    private static int outstanding(Channel channel, final MessageQueue msgQueue) throws Exception {
+        return channel.eventLoop().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return msgQueue.getOutstanding();
+            }
+        }).sync().getNow();
+    }
+}
@@ -0,0 +1,112 @@
+package org.ethereum.net.wire;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.net.eth.GetBlocksMessage;
+import org.ethereum.net.message.Message;
+import org.ethereum.net.p2p.PingMessage;
+import org.ethereum.net.p2p.PongMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.net.message.StaticMessages.PING_MESSAGE;
+import static org.ethereum.net.message.StaticMessages.PONG_MESSAGE;
+import static org.ethereum.net.message.StaticMessages.SYNC_TOKEN;
+import static org.junit.Assert.*;
+
+public class MessageDecoderTest {
+
+    @Test // a packet split in pieces, the next one in the same piece
+    public void test1() {
+        byte[] ping = packet(PING_MESSAGE.getEncoded());
+        byte[] pong = packet(PONG_MESSAGE.getEncoded());
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        channel.writeInbound(Unpooled.wrappedBuffer(ping, 0, 5));
+        assertNull(channel.readInbound());
+        channel.writeInbound(Unpooled.wrappedBuffer(ping, 5, ping.length - 5));
+        assertTrue(channel.readInbound() instanceof PingMessage);
+
+        channel.writeInbound(Unpooled.wrappedBuffer(pong, pong));
+        assertTrue(channel.readInbound() instanceof PongMessage);
+        assertTrue(channel.readInbound() instanceof PongMessage);
+        assertNull(channel.readInbound());
+        assertTrue(channel.isOpen());
+    }
+
+    @Test // the garbage up to the sync token is skipped
+    public void test2() {
+        byte[] ping = packet(PING_MESSAGE.getEncoded());
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, ping));
+        assertTrue(channel.readInbound() instanceof PingMessage);
+        assertTrue(channel.isOpen());
+    }
+
+    @Test // a message larger than allowed drops the peer
+    public void test3() {
+        ByteBuf header = Unpooled.buffer();
+        header.writeBytes(SYNC_TOKEN);
+        header.writeInt(MessageDecoder.MAX_MESSAGE_SIZE + 1);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        channel.writeInbound(header);
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test // garbage split over many reads counts once, a message received resets the count
+    public void test4() {
+        byte[] ping = packet(PING_MESSAGE.getEncoded());
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        for (int round = 0; round <= MessageDecoder.MAX_RESYNCS; ++round) {
+            for (int i = 0; i <= MessageDecoder.MAX_RESYNCS; ++i)
+                channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}));
+            channel.writeInbound(Unpooled.wrappedBuffer(ping));
+            assertTrue(channel.readInbound() instanceof PingMessage);
+        }
+        assertTrue(channel.isOpen());
+    }
+
+    @Test // more garbage than the largest message drops the peer
+    public void test5() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        byte[] garbage = new byte[1024 * 1024];
+        for (int i = 0; i <= MessageDecoder.MAX_MESSAGE_SIZE / garbage.length && channel.isOpen(); ++i)
+            channel.writeInbound(Unpooled.wrappedBuffer(garbage));
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test // a message larger than the initial array arrives in pieces
+    public void test6() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i)
+            hashes.add(HashUtil.sha3(new byte[]{(byte) i, (byte) (i >> 8)}));
+        byte[] encoded = new GetBlocksMessage(hashes).getEncoded();
+        byte[] packet = packet(encoded);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+
+        for (int offset = 0; offset < packet.length; offset += 1000)
+            channel.writeInbound(Unpooled.wrappedBuffer(packet, offset, Math.min(1000, packet.length - offset)));
+        Message received = (Message) channel.readInbound();
+        assertArrayEquals(encoded, received.getEncoded());
+    }
+
+    private static byte[] packet(byte[] encoded) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeBytes(SYNC_TOKEN);
+        buf.writeInt(encoded.length);
+        buf.writeBytes(encoded);
+        byte[] packet = new byte[buf.readableBytes()];
+        buf.readBytes(packet);
+        return packet;
+    }
+}
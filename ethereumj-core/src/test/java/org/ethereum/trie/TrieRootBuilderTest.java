@@ -0,0 +1,133 @@
+package org.ethereum.trie;
+
+import org.ethereum.util.RLP;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrieRootBuilderTest {
+
+    @Test // short keys, many of them prefixes of the others
+    public void test1() {
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (String key : new String[]{"doge", "do", "dog", "horse", "c", "ca", "cat", "test", ""}) {
+            keys.add(key.getBytes());
+            values.add(("value of " + key).getBytes());
+        }
+        assertRoot(keys, values);
+
+        for (int i = 0; i < 200; ++i) {
+            Random random = new Random(i);
+            keys.clear();
+            values.clear();
+            for (int j = random.nextInt(40); j > 0; --j) {
+                byte[] key = new byte[random.nextInt(4)];
+                random.nextBytes(key);
+                if (containsKey(keys, key)) continue;
+                byte[] value = new byte[1 + random.nextInt(i % 2 == 0 ? 4 : 60)];
+                random.nextBytes(value);
+                keys.add(key);
+                values.add(value);
+            }
+            assertRoot(keys, values);
+        }
+    }
+
+    @Test // transaction trie keys and storage trie keys
+    public void test2() {
+        Random random = new Random(1);
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            keys.add(RLP.encodeInt(i));
+            byte[] value = new byte[100];
+            random.nextBytes(value);
+            values.add(value);
+        }
+        assertRoot(keys, values);
+
+        keys.clear();
+        values.clear();
+        for (int i = 0; i < 300; ++i) {
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            keys.add(key);
+            values.add(RLP.encodeElement(new byte[]{(byte) random.nextInt(256)}));
+        }
+        assertRoot(keys, values);
+    }
+
+    @Test
+    public void test3() {
+        assertEquals(0, new TrieRootBuilder().getRootHash().length);
+        assertEquals(0, new TrieRootBuilder().add("dog".getBytes(), new byte[0]).getRootHash().length);
+
+        TrieImpl trie = new TrieImpl(null);
+        trie.update("dog", "puppy");
+        assertEquals(Hex.toHexString(trie.getRootHash()),
+                Hex.toHexString(new TrieRootBuilder().add("dog".getBytes(), "puppy".getBytes()).getRootHash()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test4() {
+        new TrieRootBuilder().add("dog".getBytes(), "puppy".getBytes()).add("do".getBytes(), "verb".getBytes());
+    }
+
+    @Test
+    public void performance() {
+        boolean performanceEnabled = false;
+
+        if (performanceEnabled) {
+            final int ITERATIONS = 2000;
+            Random random = new Random(1);
+            List<byte[]> keys = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+            for (int i = 0; i < 200; ++i) {
+                keys.add(RLP.encodeInt(i));
+                byte[] value = new byte[120];
+                random.nextBytes(value);
+                values.add(value);
+            }
+
+            long start1 = System.currentTimeMillis();
+            for (int i = 0; i < ITERATIONS; i++) {
+                TrieImpl trie = new TrieImpl(null);
+                for (int j = 0; j < keys.size(); ++j)
+                    trie.update(keys.get(j), values.get(j));
+                trie.getRootHash();
+            }
+            long end1 = System.currentTimeMillis();
+
+            long start2 = System.currentTimeMillis();
+            for (int i = 0; i < ITERATIONS; i++) {
+                TrieRootBuilder.getRootHash(keys, values);
+            }
+            long end2 = System.currentTimeMillis();
+
+            System.out.println("Result TrieImpl\t: " + (end1 - start1) + "ms");
+            System.out.println("Result TrieRootBuilder\t: " + (end2 - start2) + "ms");
+        } else {
+            System.out.println("Performance test for TrieRootBuilder disabled");
+        }
+    }
+
+    private static void assertRoot(List<byte[]> keys, List<byte[]> values) {
+        TrieImpl trie = new TrieImpl(null);
+        for (int i = 0; i < keys.size(); ++i)
+            trie.update(keys.get(i), values.get(i));
+        assertEquals(Hex.toHexString(trie.getRootHash()),
+                Hex.toHexString(TrieRootBuilder.getRootHash(keys, values)));
+    }
+
+    private static boolean containsKey(List<byte[]> keys, byte[] key) {
+        for (byte[] k : keys)
+            if (java.util.Arrays.equals(k, key)) return true;
+        return false;
+    }
+}
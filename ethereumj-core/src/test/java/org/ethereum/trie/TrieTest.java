@@ -1,5 +1,6 @@
 package org.ethereum.trie;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -632,7 +633,7 @@ public class TrieTest {
 
         System.out.println("root_2:  => " + Hex.toHexString( trie2.getRootHash()));
 
-        assertEquals(trieSingle.getRootHash(), trie2.getRootHash());
+        assertArrayEquals(trieSingle.getRootHash(), trie2.getRootHash());
 
     }
     
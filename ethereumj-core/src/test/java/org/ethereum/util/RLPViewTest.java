@@ -0,0 +1,88 @@
+package org.ethereum.util;
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class RLPViewTest {
+
+    @Test // same items as decode2, short and long ones
+    public void test1() {
+        byte[] longItem = new byte[100];
+        longItem[99] = 7;
+        byte[][] longList = new byte[30][];
+        for (int i = 0; i < longList.length; ++i)
+            longList[i] = RLP.encodeInt(i * 1000);
+
+        byte[] encoded = RLP.encodeList(
+                RLP.encodeElement(null),
+                RLP.encodeByte((byte) 5),
+                RLP.encodeElement("dog".getBytes()),
+                RLP.encodeElement(longItem),
+                RLP.encodeList(longList),
+                RLP.encodeList());
+
+        RLPList expected = (RLPList) RLP.decode2(encoded).get(0);
+        RLPView view = RLPView.wrap(encoded);
+
+        assertTrue(view.isList());
+        assertEquals(expected.size(), view.size());
+        for (int i = 0; i < 4; ++i) {
+            assertFalse(view.get(i).isList());
+            assertArrayEquals(expected.get(i).getRLPData(), view.get(i).getBytes());
+        }
+
+        RLPList expectedNested = (RLPList) expected.get(4);
+        RLPView nested = view.get(4);
+        assertArrayEquals(expectedNested.getRLPData(), nested.getEncoded());
+        assertEquals(30, nested.size());
+        for (int i = 0; i < 30; ++i)
+            assertEquals(i * 1000, nested.get(i).getLong());
+
+        assertTrue(view.get(5).isList());
+        assertEquals(0, view.get(5).size());
+    }
+
+    @Test // views share the original array
+    public void test2() {
+        byte[] encoded = RLP.encodeList(RLP.encodeElement("cat".getBytes()), RLP.encodeElement("dog".getBytes()));
+        RLPView dog = RLPView.wrap(encoded).get(1);
+
+        assertSame(encoded, dog.getData());
+        assertEquals(5, dog.getOffset());
+        assertEquals(4, dog.getEncodedLength());
+        assertEquals(6, dog.getPayloadOffset());
+        assertEquals(3, dog.getPayloadLength());
+        assertEquals("83646f67", Hex.toHexString(dog.getEncoded()));
+    }
+
+    @Test // numbers
+    public void test3() {
+        byte[] encoded = RLP.encodeList(
+                RLP.encodeElement(null),
+                RLP.encodeBigInteger(new BigInteger("123456789012345678901234567890")),
+                RLP.encodeElement(Hex.decode("ff00000000000000ff")));
+        RLPView view = RLPView.wrap(encoded);
+
+        assertEquals(0, view.get(0).getLong());
+        assertEquals(0, view.get(0).getByte());
+        assertNull(view.get(0).getBytes());
+        assertEquals(BigInteger.ZERO, view.get(0).getBigInteger());
+        assertEquals(new BigInteger("123456789012345678901234567890"), view.get(1).getBigInteger());
+        assertEquals(new BigInteger(1, Hex.decode("ff00000000000000ff")).longValue(), view.get(2).getLong());
+    }
+
+    @Test(expected = RuntimeException.class) // the item claims more bytes than the list has
+    public void test4() {
+        byte[] encoded = Hex.decode("c283646f67");
+        RLPView.wrap(encoded).get(0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test5() {
+        RLPView.wrap(RLP.encodeElement("dog".getBytes())).size();
+    }
+}
@@ -0,0 +1,95 @@
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RLPWriterTest {
+
+    @Test // same bytes as the array based encoding, short and long elements and lists
+    public void test1() {
+        Random random = new Random(1);
+        byte[][] items = new byte[300][];
+        byte[][] encodedItems = new byte[items.length][];
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = new byte[random.nextInt(70)];
+            random.nextBytes(items[i]);
+            encodedItems[i] = RLP.encodeElement(items[i]);
+        }
+
+        byte[] expected = RLP.encodeList(
+                RLP.encodeElement(null),
+                RLP.encodeElement(new byte[]{0x7f}),
+                RLP.encodeList(encodedItems),
+                RLP.encodeList(encodedItems[0], encodedItems[1]),
+                RLP.encodeList());
+
+        RLPWriter writer = new RLPWriter()
+                .startList()
+                    .writeElement(null)
+                    .writeElement(new byte[]{0x7f})
+                    .startList();
+        for (byte[] item : items)
+            writer.writeElement(item);
+        writer.endList()
+                    .startList().writeEncoded(encodedItems[0]).writeElement(items[1]).endList()
+                    .startList().endList()
+                .endList();
+
+        assertEquals(expected.length, writer.size());
+        assertArrayEquals(expected, writer.toByteArray());
+    }
+
+    @Test // numbers
+    public void test2() {
+        long[] values = {0, 1, 0x7f, 0x80, 0xff, 0x100, 1000000, Long.MAX_VALUE};
+        for (long value : values) {
+            byte[] expected = RLP.encodeBigInteger(BigInteger.valueOf(value));
+            assertEquals("value: " + value, Hex.toHexString(expected),
+                    Hex.toHexString(new RLPWriter().writeLong(value).toByteArray()));
+            assertEquals("value: " + value, Hex.toHexString(expected),
+                    Hex.toHexString(new RLPWriter().writeBigInteger(BigInteger.valueOf(value)).toByteArray()));
+        }
+        assertEquals("80", Hex.toHexString(new RLPWriter().writeByte((byte) 0).toByteArray()));
+        assertEquals("81ff", Hex.toHexString(new RLPWriter().writeByte((byte) 0xff).toByteArray()));
+    }
+
+    @Test // all the outputs get the same bytes
+    public void test3() {
+        RLPWriter writer = new RLPWriter()
+                .startList()
+                    .writeString("dog")
+                    .writeElement(new byte[100])
+                .endList();
+        byte[] expected = writer.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length);
+        writer.writeTo(buffer);
+        buffer.flip();
+        byte[] fromBuffer = new byte[buffer.remaining()];
+        buffer.get(fromBuffer);
+        assertArrayEquals(expected, fromBuffer);
+
+        ByteBuf buf = Unpooled.buffer(1);
+        writer.writeTo(buf);
+        byte[] fromBuf = new byte[buf.readableBytes()];
+        buf.readBytes(fromBuf);
+        assertArrayEquals(expected, fromBuf);
+
+        byte[] out = new byte[expected.length + 2];
+        assertEquals(out.length, writer.writeTo(out, 2));
+        assertEquals(Hex.toHexString(expected), Hex.toHexString(out, 2, expected.length));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test4() {
+        new RLPWriter().startList().writeString("dog").size();
+    }
+}
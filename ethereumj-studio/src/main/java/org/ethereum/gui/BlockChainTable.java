@@ -1,7 +1,9 @@
 package org.ethereum.gui;
 
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
 import org.ethereum.core.Transaction;
+import org.ethereum.facade.Blockchain;
 import org.ethereum.manager.WorldManager;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.Utils;
@@ -227,8 +229,7 @@ public class BlockChainTable extends JFrame implements ActionListener {
     private long findBlock(String textToFind, long blockNum, boolean forward) {
         if (forward) {
             for (long i = blockNum + 1; i < WorldManager.getInstance().getBlockchain().getSize(); i++) {
-                Block block = WorldManager.getInstance().getBlockchain().getBlockByNumber(i);
-                if (block.toString().toLowerCase().contains(textToFind.toLowerCase())) {
+                if (blockContains(i, textToFind.toLowerCase())) {
                     foundBlocks.add(i);
                     lastFindIndex = foundBlocks.size() - 1;
                     break;
@@ -236,8 +237,7 @@ public class BlockChainTable extends JFrame implements ActionListener {
             }
         } else {
             for (long i = blockNum - 1; i >= 0; i--) {
-                Block block = WorldManager.getInstance().getBlockchain().getBlockByNumber(i);
-                if (block.toString().toLowerCase().contains(textToFind.toLowerCase())) {
+                if (blockContains(i, textToFind.toLowerCase())) {
                     foundBlocks.add(0, i);
                     lastFindIndex = 0;
                     break;
@@ -247,6 +247,19 @@ public class BlockChainTable extends JFrame implements ActionListener {
         return foundBlocks.get(lastFindIndex);
     }
 
+    /* the header is checked first, the transactions are read only if it doesn't match */
+    private boolean blockContains(long blockNum, String text) {
+        Blockchain blockchain = WorldManager.getInstance().getBlockchain();
+        byte[] hash = WorldManager.getInstance().getRepository().getBlockHash(blockNum);
+        if (hash == null) return false;
+
+        BlockHeader header = blockchain.getBlockHeaderByHash(hash);
+        if (header.toString().toLowerCase().contains(text)) return true;
+
+        Block block = blockchain.getBlockByHash(hash);
+        return block.toString().toLowerCase().contains(text);
+    }
+
     public void terminate() {
         running = false;
     }